@@ -0,0 +1,4 @@
+#!usr/env/bin bash
+rm -rf src/benchmarks/target &&
+cd src/benchmarks && mvn package &&
+cd ../..
\ No newline at end of file
@@ -14,12 +14,13 @@ import com.diogonunes.jcdp.color.api.Ansi.FColor;
 import com.diogonunes.jcdp.color.ColoredPrinter;
 import java.io.IOException;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.Files;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class Application
 {
@@ -31,6 +32,8 @@ public class Application
     public Vector<Ast.ProgramNode> programs = new Vector<>();
 
     private ColoredPrinter grayPrinter;
+    private ForkJoinPool parsePool;
+    private AstCache astCache;
 
     public static void main(String[] arguments2)
     {
@@ -45,6 +48,7 @@ public class Application
             .build();
         application.setProgramName("sxc");
         application.parse(arguments2);
+        Problem.fullStackTraces |= arguments.debugProblems;
 
         grayPrinter = new ColoredPrinter.Builder(0, false)
             .foreground(FColor.BLUE)
@@ -64,7 +68,7 @@ public class Application
             this.verifier.allowDuplicates = true;
             this.revealShockScriptNamespace();
             var sources = this.resolveSources(VectorUtils.fromArray(new Path[] {executionPath.resolve("../../lib/stl")}), new Vector<>());
-            this.parseProgram(sources);
+            this.parseProgram(sources, true);
 
             if (!this.syntaxInvalidated)
             {
@@ -105,7 +109,7 @@ public class Application
             System.out.println("No source specified.");
             return;
         }
-        this.parseProgram(sources);
+        this.parseProgram(sources, false);
         if (!this.syntaxInvalidated)
         {
             this.verifyProgram();
@@ -131,10 +135,10 @@ public class Application
 
     public final class Source
     {
-        public String source;
+        public SourceText source;
         public String url;
 
-        public Source(String source, String url)
+        public Source(SourceText source, String url)
         {
             this.source = source;
             this.url = url;
@@ -161,10 +165,10 @@ public class Application
 
         for (var path : sources2)
         {
-            var text = "";
+            SourceText text = null;
             try
             {
-                text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+                text = SourceText.read(path);
             }
             catch (IOException exc)
             {
@@ -255,24 +259,82 @@ public class Application
         }
     }
 
-    private void parseProgram(Vector<Source> sources)
+    /*
+     * Sources are parsed in parallel, each by one worker of the pool along
+     * with the sources it includes. Programs and problems are then collected
+     * in the order the sources were given. Unchanged sources are loaded from
+     * the AST cache instead, and sources included by several are parsed once.
+     */
+    private void parseProgram(Vector<Source> sources, boolean lazyFunctionBodies)
     {
-        for (var p : sources)
+        var nameTable = new NameTable();
+        var includeCache = new IncludeCache();
+        var scripts = new Script[sources.size()];
+        var programs = new Ast.ProgramNode[sources.size()];
+        var cache = this.astCache();
+        var tasks = new Vector<ForkJoinTask<?>>();
+        for (int i = 0; i != sources.size(); ++i)
         {
-            var script = new Script(p.source, p.url);
-            var program = new Parser(script).parseProgram();
-            if (program != null)
+            final int j = i;
+            tasks.add(this.parsePool().submit(() ->
             {
-                this.programs.add(program);
+                var p = sources.get(j);
+                programs[j] = cache == null ? null : cache.load(p.source, p.url, nameTable);
+                if (programs[j] != null)
+                {
+                    scripts[j] = programs[j].script;
+                    return;
+                }
+                scripts[j] = new Script(p.source, p.url, nameTable);
+                scripts[j].setKeepsComments(false);
+                var lexer = new Lexer(scripts[j]);
+                lexer.enableTokenBuffer();
+                var parser = new Parser(lexer);
+                parser.setLazyFunctionBodies(lazyFunctionBodies);
+                parser.setIncludeCache(includeCache);
+                programs[j] = parser.parseProgram();
+                if (programs[j] != null && cache != null)
+                {
+                    cache.store(programs[j]);
+                }
+            }));
+        }
+        for (var task : tasks)
+        {
+            task.join();
+        }
+        for (int i = 0; i != sources.size(); ++i)
+        {
+            if (programs[i] != null)
+            {
+                this.programs.add(programs[i]);
             }
             else
             {
                 this.syntaxInvalidated = true;
-                this.reportScriptProblems(script);
+                this.reportScriptProblems(scripts[i]);
             }
         }
     }
 
+    private ForkJoinPool parsePool()
+    {
+        if (this.parsePool == null)
+        {
+            this.parsePool = new ForkJoinPool(Math.max(1, this.arguments.jobs));
+        }
+        return this.parsePool;
+    }
+
+    private AstCache astCache()
+    {
+        if (this.astCache == null && this.arguments.astCachePath != null)
+        {
+            this.astCache = new AstCache(Paths.get(this.arguments.astCachePath));
+        }
+        return this.astCache;
+    }
+
     private void verifyProgram()
     {
         if (this.syntaxInvalidated)
@@ -348,28 +410,23 @@ public class Application
         str1 = "         ";
         str2 = new Integer(span.firstLine()).toString();
         str1 = str1.substring(0, str1.length() - str2.length()) + str2;
-        str2 = script.source().substring(line1Index);
 
         {
-            int j2 = 0;
-            int j3 = -1;
-            for (; j2 != str2.length(); ++j2)
+            var source = script.source();
+            int j2 = line1Index;
+            for (; j2 != source.length(); ++j2)
             {
-                var ch = str2.codePointAt(j2);
+                var ch = source.charAt(j2);
                 if (ch == 0x0a || ch == 0x0d)
                 {
-                    j3 = j2;
                     break;
                 }
             }
-            if (j3 != -1)
-            {
-                str2 = str2.substring(0, j3);
-            }
+            str2 = source.substring(line1Index, j2);
         }
 
-        var i = script.source().offsetByCodePoints(0, span.start()) - line1Index;
-        var j = script.source().offsetByCodePoints(0, span.end()) - line1Index;
+        var i = script.getCodeUnitOffset(span.start()) - line1Index;
+        var j = script.getCodeUnitOffset(span.end()) - line1Index;
         j = j > str2.length() ? str2.length() : j;
 
         str3 = str2.substring(i, j);
@@ -417,5 +474,14 @@ public class Application
 
         @Parameter(names = "--builtins", order = 4)
         public boolean builtins = false;
+
+        @Parameter(names = "--debug-problems", order = 5)
+        public boolean debugProblems = false;
+
+        @Parameter(names = "--jobs", order = 6)
+        public int jobs = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = "--ast-cache", order = 7)
+        public String astCachePath = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.recoyx.sxc.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Generated source shared by the benchmarks of a trial, in sizes from
+ * 10 KiB to 100 MiB, of plain code or mostly comments.
+ */
+@State(Scope.Benchmark)
+public class Corpus
+{
+    @Param({"10K", "1M", "10M", "100M"})
+    public String size;
+
+    @Param({"code", "comments"})
+    public String style;
+
+    public String source;
+    public byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        source = new CorpusGenerator(CorpusGenerator.DEFAULT_SEED, style.equals("comments")).generate(CorpusGenerator.parseSize(size));
+        bytes = source.getBytes(StandardCharsets.UTF_8);
+    }
+}
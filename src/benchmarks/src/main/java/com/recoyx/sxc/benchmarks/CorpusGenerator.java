@@ -0,0 +1,359 @@
+package com.recoyx.sxc.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/**
+ * Generates ShockScript sources for benchmarks. The same seed and size give
+ * the same text. Sources are sequences of packages with generic classes,
+ * interfaces, XML and regular expression literals, comments and deeply
+ * nested statements and expressions, all free of syntax errors. Comment-heavy
+ * sources add long documentation comments and a line comment before every
+ * statement, so that most of the text is comments.
+ */
+public final class CorpusGenerator
+{
+    static public final long DEFAULT_SEED = 0x5c5c5c5cL;
+
+    static private final String[] WORDS =
+    {
+        "the", "value", "of", "each", "item", "is", "kept", "in", "order", "and",
+        "returned", "as", "a", "number", "when", "index", "lies", "within", "bounds",
+        "otherwise", "undefined", "box", "holds", "generated", "markup", "for", "tests",
+    };
+
+    private SplittableRandom _random;
+    private boolean _commentHeavy;
+    private StringBuilder _builder;
+    private int _indent;
+
+    public CorpusGenerator(long seed, boolean commentHeavy)
+    {
+        _random = new SplittableRandom(seed);
+        _commentHeavy = commentHeavy;
+    }
+
+    public CorpusGenerator(long seed)
+    {
+        this(seed, false);
+    }
+
+    public CorpusGenerator()
+    {
+        this(DEFAULT_SEED);
+    }
+
+    /**
+     * Generates whole packages until the text is at least <code>size</code>
+     * characters long. The text is ASCII, so characters are bytes.
+     */
+    public String generate(int size)
+    {
+        _builder = new StringBuilder(size + 4096);
+        _indent = 0;
+        for (int i = 0; _builder.length() < size; ++i)
+        {
+            generatePackage(i);
+        }
+        var text = _builder.toString();
+        _builder = null;
+        return text;
+    }
+
+    /**
+     * Parses a size such as <code>10K</code>, <code>1M</code> or a plain
+     * number of bytes.
+     */
+    static public int parseSize(String size)
+    {
+        var last = Character.toUpperCase(size.charAt(size.length() - 1));
+        var digits = last == 'K' || last == 'M' ? size.substring(0, size.length() - 1) : size;
+        return Integer.parseInt(digits) * (last == 'K' ? 1024 : last == 'M' ? 1024 * 1024 : 1);
+    }
+
+    /**
+     * Usage: <code>CorpusGenerator size output [seed [comments]]</code>.
+     */
+    static public void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: CorpusGenerator <size> <output> [seed [comments]]");
+            System.exit(1);
+        }
+        var seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        var commentHeavy = args.length > 3 && args[3].equals("comments");
+        var text = new CorpusGenerator(seed, commentHeavy).generate(parseSize(args[0]));
+        Files.write(Paths.get(args[1]), text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void generatePackage(int n)
+    {
+        line("package gen.p" + n);
+        open();
+        if (n != 0)
+        {
+            line("import gen.p" + (n - 1) + ".Box" + (n - 1) + "_0;");
+            blank();
+        }
+        generateInterface(n);
+        blank();
+        int numClasses = 1 + _random.nextInt(3);
+        for (int i = 0; i != numClasses; ++i)
+        {
+            generateClass(n, i);
+            blank();
+        }
+        generateFunction("helper" + n, 6);
+        close();
+    }
+
+    private void generateInterface(int n)
+    {
+        line("public interface IBox" + n);
+        open();
+        line("function item(i:int):*");
+        line("function get size():int");
+        close();
+    }
+
+    private void generateClass(int n, int i)
+    {
+        var name = "Box" + n + "_" + i;
+        line("/**");
+        line(" * Generated class " + name + ". It keeps values of type T in an array");
+        line(" * and shows them as XML.");
+        if (_commentHeavy)
+        {
+            line(" *");
+            commentLines(12 + _random.nextInt(20), " * ");
+        }
+        line(" */");
+        line("[Generated(unit=" + n + ")] public class " + name + ".<T> implements IBox" + n);
+        open();
+        line("static public const LIMIT:uint = 0x" + Integer.toHexString(_random.nextInt() >>> 1) + ";");
+        line("private var _items:Array = [];");
+        line("private var _names:Array = new Array;");
+        blank();
+        line("public function " + name + "(...values)");
+        open();
+        line("// Copies the given values.");
+        line("for each (var value in values)");
+        open();
+        line("_items.push(value);");
+        line("_names.push(String(value));");
+        close();
+        close();
+        blank();
+        line("public function item(i:int):*");
+        open();
+        line("return i < _items.length ? _items[i] : undefined;");
+        close();
+        blank();
+        line("public function get size():int");
+        open();
+        line("return _items.length;");
+        close();
+        blank();
+        line("public function toXML(id:int):XML");
+        open();
+        line("var markup = <!-- generated -->;");
+        line("return <box id={id} kind=\"" + name + "\" size={size} first={item(0)}/>;");
+        close();
+        blank();
+        line("public function matches(s:String):Boolean");
+        open();
+        line("var pattern = /^[a-z_]+[0-9]{1,4}(\\.[a-z]+)?$/gi;");
+        line("return pattern.test(s) && !/\\s/.test(s);");
+        close();
+        int numMethods = 1 + _random.nextInt(4);
+        for (int k = 0; k != numMethods; ++k)
+        {
+            blank();
+            generateFunction("compute" + k, 4 + _random.nextInt(10));
+        }
+        close();
+    }
+
+    private void generateFunction(String name, int depth)
+    {
+        if (_commentHeavy)
+        {
+            line("/*");
+            commentLines(4 + _random.nextInt(10), " * ");
+            line(" */");
+        }
+        line("public function " + name + "(a:int, b:Number = " + number() + ", ...rest):Number");
+        open();
+        line("var x:Number = " + expression(3) + ";");
+        line("var s:String = \"" + name + " \\t\" + 'value';");
+        line("var o = {a: a, b: [1, 2, 3], \"c\": {d: null}};");
+        statements(depth);
+        line("return x;");
+        close();
+    }
+
+    private void statements(int depth)
+    {
+        int count = _random.nextInt(4) == 0 ? 2 : 1;
+        for (int i = 0; i != count; ++i)
+        {
+            statement(depth);
+        }
+    }
+
+    private void statement(int depth)
+    {
+        if (_commentHeavy)
+        {
+            commentLines(1 + _random.nextInt(2), "// ");
+        }
+        if (depth == 0)
+        {
+            line("x = " + expression(2) + ";");
+            return;
+        }
+        switch (_random.nextInt(7))
+        {
+            case 0:
+                line("if (" + expression(2) + " > x)");
+                block(depth);
+                line("else");
+                block(depth);
+                break;
+            case 1:
+                line("while (x < " + number() + ")");
+                block(depth);
+                break;
+            case 2:
+                line("for (var i" + depth + ":int = 0; i" + depth + " < " + _random.nextInt(100) + "; ++i" + depth + ")");
+                block(depth);
+                break;
+            case 3:
+                line("do");
+                block(depth);
+                line("while (x > " + number() + ");");
+                break;
+            case 4:
+                line("switch (a)");
+                open();
+                line("case " + _random.nextInt(10) + ":");
+                line("    x += " + expression(1) + ";");
+                line("    break;");
+                line("default:");
+                line("    x -= 1;");
+                close();
+                break;
+            case 5:
+                line("/* Block comment at depth " + depth + ",");
+                line("   over two lines. */");
+                line("x = " + expression(4) + ";");
+                break;
+            default:
+                line("var f" + depth + " = function(z:int):int");
+                open();
+                statement(depth - 1);
+                line("return z * 2;");
+                --_indent;
+                line("};");
+                break;
+        }
+    }
+
+    private void block(int depth)
+    {
+        open();
+        statements(depth - 1);
+        close();
+    }
+
+    private String expression(int depth)
+    {
+        if (depth == 0)
+        {
+            switch (_random.nextInt(4))
+            {
+                case 0:
+                    return "a";
+                case 1:
+                    return "x";
+                case 2:
+                    return "rest.length";
+                default:
+                    return number();
+            }
+        }
+        switch (_random.nextInt(5))
+        {
+            case 0:
+                return "(" + expression(depth - 1) + " + " + expression(depth - 1) + ")";
+            case 1:
+                return expression(depth - 1) + " * " + expression(depth - 1);
+            case 2:
+                return "Math.max(" + expression(depth - 1) + ", " + expression(depth - 1) + ")";
+            case 3:
+                return "(a > 0 ? " + expression(depth - 1) + " : " + expression(depth - 1) + ")";
+            default:
+                return "-(" + expression(depth - 1) + ")";
+        }
+    }
+
+    private String number()
+    {
+        switch (_random.nextInt(3))
+        {
+            case 0:
+                return Integer.toString(_random.nextInt(1000));
+            case 1:
+                return _random.nextInt(100) + "." + _random.nextInt(100);
+            default:
+                return "0x" + Integer.toHexString(_random.nextInt(0x10000));
+        }
+    }
+
+    /*
+     * Lines of comment text of up to 72 characters after the prefix.
+     */
+    private void commentLines(int count, String prefix)
+    {
+        for (int i = 0; i != count; ++i)
+        {
+            var text = new StringBuilder(prefix);
+            while (text.length() < 72)
+            {
+                text.append(WORDS[_random.nextInt(WORDS.length)]).append(' ');
+            }
+            text.setLength(text.length() - 1);
+            line(text.toString());
+        }
+    }
+
+    private void open()
+    {
+        line("{");
+        ++_indent;
+    }
+
+    private void close()
+    {
+        --_indent;
+        line("}");
+    }
+
+    private void blank()
+    {
+        _builder.append('\n');
+    }
+
+    private void line(String text)
+    {
+        for (int i = 0; i != _indent; ++i)
+        {
+            _builder.append("    ");
+        }
+        _builder.append(text).append('\n');
+    }
+}
@@ -0,0 +1,120 @@
+package com.recoyx.sxc.benchmarks;
+
+import com.recoyx.sxc.parser.Lexer;
+import com.recoyx.sxc.parser.LexerInput;
+import com.recoyx.sxc.parser.Script;
+import com.recoyx.sxc.parser.Token;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of <code>Lexer.shift()</code> over a whole corpus, from a string
+ * and from UTF-8 bytes. The <code>tokens</code> counter gives tokens per
+ * second. <code>shiftUTF8Scalar</code> reads the same bytes through an input
+ * that skips spaces and comment text one unit at a time; compared with
+ * <code>shiftUTF8</code> over the <code>comments</code> corpus, it shows what
+ * skipping eight bytes at a time gains.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class LexerBenchmark
+{
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    static public class Counters
+    {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public int shift(Corpus corpus, Counters counters)
+    {
+        return scan(new Lexer(new Script(corpus.source)), counters);
+    }
+
+    @Benchmark
+    public int shiftUTF8(Corpus corpus, Counters counters)
+    {
+        var script = new Script(corpus.source);
+        return scan(new Lexer(script, LexerInput.fromUTF8(corpus.bytes)), counters);
+    }
+
+    @Benchmark
+    public int shiftUTF8Scalar(Corpus corpus, Counters counters)
+    {
+        var script = new Script(corpus.source);
+        return scan(new Lexer(script, new ScalarInput(LexerInput.fromUTF8(corpus.bytes))), counters);
+    }
+
+    /*
+     * Input delegating to another, which leaves skipping spaces and comment
+     * text to the scalar loops of LexerInput.
+     */
+    static private final class ScalarInput extends LexerInput
+    {
+        private LexerInput _input;
+
+        public ScalarInput(LexerInput input)
+        {
+            _input = input;
+        }
+
+        public int length()
+        {
+            return _input.length();
+        }
+
+        public int unitAt(int offset)
+        {
+            return _input.unitAt(offset);
+        }
+
+        public int codePointAt(int offset)
+        {
+            return _input.codePointAt(offset);
+        }
+
+        public int nextOffset(int offset)
+        {
+            return _input.nextOffset(offset);
+        }
+
+        public String slice(int start, int end)
+        {
+            return _input.slice(start, end);
+        }
+    }
+
+    static private int scan(Lexer lexer, Counters counters)
+    {
+        int count = 0;
+        do
+        {
+            lexer.shift();
+            ++count;
+        }
+        while (lexer.token.type != Token.EOF);
+        counters.tokens += count;
+        return count;
+    }
+}
@@ -0,0 +1,88 @@
+package com.recoyx.sxc.benchmarks;
+
+import com.recoyx.sxc.parser.Ast;
+import com.recoyx.sxc.parser.Parser;
+import com.recoyx.sxc.parser.Script;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of <code>Parser.parseProgram()</code> over a whole corpus,
+ * parsing function bodies or skipping them. The <code>bytes</code> counter
+ * gives bytes per second and the <code>nodes</code> counter nodes per
+ * second. Run with <code>-prof gc</code> and divide
+ * <code>gc.alloc.rate.norm</code> by the corpus's node count for the
+ * allocation per node.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ParserBenchmark
+{
+    /**
+     * Number of nodes of the corpus, counted once per trial.
+     */
+    @State(Scope.Benchmark)
+    static public class Nodes
+    {
+        public int count;
+
+        @Setup(Level.Trial)
+        public void count(Corpus corpus)
+        {
+            var program = new Parser(new Script(corpus.source)).parseProgram();
+            if (program == null)
+            {
+                throw new IllegalStateException("Generated corpus has syntax errors");
+            }
+            count = program.countNodes();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    static public class Counters
+    {
+        public long bytes;
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            bytes = 0;
+            nodes = 0;
+        }
+    }
+
+    @Benchmark
+    public Ast.ProgramNode parseProgram(Corpus corpus, Nodes nodes, Counters counters)
+    {
+        var program = new Parser(new Script(corpus.source)).parseProgram();
+        counters.bytes += corpus.bytes.length;
+        counters.nodes += nodes.count;
+        return program;
+    }
+
+    @Benchmark
+    public Ast.ProgramNode parseProgramLazy(Corpus corpus, Counters counters)
+    {
+        var parser = new Parser(new Script(corpus.source));
+        parser.setLazyFunctionBodies(true);
+        var program = parser.parseProgram();
+        counters.bytes += corpus.bytes.length;
+        return program;
+    }
+}
@@ -0,0 +1,336 @@
+package com.recoyx.sxc.benchmarks;
+
+import com.recoyx.sxc.parser.Token;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Punctuator recognition over a corpus, as <code>Lexer.normalScan()</code>
+ * did it before its dispatch table and as it does it now. The
+ * <code>probes</code> scanner tries the multi-character punctuators one
+ * after another and then switches on the single character; the
+ * <code>table</code> scanner walks the trie of the punctuator's first code
+ * point for the longest match. Both skip every other character the same
+ * way, so the difference is the cost of recognition alone. The
+ * <code>punctuators</code> counter gives punctuators per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class PunctuatorBenchmark
+{
+    /**
+     * Code points of the corpus.
+     */
+    @State(Scope.Benchmark)
+    static public class Text
+    {
+        public int[] charCodes;
+
+        @Setup(Level.Trial)
+        public void decode(Corpus corpus)
+        {
+            charCodes = corpus.source.codePoints().toArray();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    static public class Counters
+    {
+        public long punctuators;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            punctuators = 0;
+        }
+    }
+
+    @Benchmark
+    public int probes(Text text, Counters counters)
+    {
+        var charCodes = text.charCodes;
+        int count = 0;
+        int hash = 0;
+        for (int i = 0; i != charCodes.length;)
+        {
+            int ch = charCodes[i];
+            if (isSkipped(ch))
+            {
+                ++i;
+                continue;
+            }
+            int length = 0;
+            Token type = null;
+            for (int j = 0; j != PROBES.length; ++j)
+            {
+                if (matchingArray(charCodes, i, PROBES[j]))
+                {
+                    type = PROBE_TYPES[j];
+                    length = PROBES[j].length;
+                    break;
+                }
+            }
+            if (type == null)
+            {
+                type = singleCharacter(ch);
+                length = 1;
+            }
+            if (type != null)
+            {
+                ++count;
+                hash = hash * 31 + type.ordinal();
+            }
+            i += length;
+        }
+        counters.punctuators += count;
+        return hash;
+    }
+
+    @Benchmark
+    public int table(Text text, Counters counters)
+    {
+        var charCodes = text.charCodes;
+        int count = 0;
+        int hash = 0;
+        for (int i = 0; i != charCodes.length;)
+        {
+            int ch = charCodes[i];
+            if (isSkipped(ch))
+            {
+                ++i;
+                continue;
+            }
+            var state = ch < 0x80 ? PUNCTUATORS[ch] : null;
+            if (state == null)
+            {
+                ++i;
+                continue;
+            }
+            var type = state.type;
+            int length = 1;
+            for (int j = 1;; ++j)
+            {
+                state = state.next(i + j < charCodes.length ? charCodes[i + j] : -1);
+                if (state == null)
+                {
+                    break;
+                }
+                if (state.type != null)
+                {
+                    type = state.type;
+                    length = j + 1;
+                }
+            }
+            ++count;
+            hash = hash * 31 + type.ordinal();
+            i += length;
+        }
+        counters.punctuators += count;
+        return hash;
+    }
+
+    /*
+     * Characters that start no punctuator, which the lexer handles before
+     * punctuators: spaces, identifiers, numbers and string quotes.
+     */
+    static private boolean isSkipped(int ch)
+    {
+        return ch <= 0x20 || ch == 0x22 || ch == 0x27 || ch == 0x24 || ch == 0x5f || Character.isLetterOrDigit(ch);
+    }
+
+    /*
+     * Multi-character punctuators in the order the scanner used to probe
+     * them.
+     */
+    static private final int[][] PROBES;
+    static private final Token[] PROBE_TYPES;
+
+    static
+    {
+        var probes = new String[]
+        {
+            ">>>=", "...", "&&=", "^^=", "||=", ">>>", "===", "!==", "<<=", ">>=",
+            "..", "::", "++", "--", "<<", ">>", "==", "!=", "<=", ">=",
+            "&&", "||", "+=", "-=", "*=", "/=", "%=", "&=", "^=", "|=",
+        };
+        var types = new Token[]
+        {
+            Token.UNSIGNED_RSHIFT_ASSIGN, Token.ELLIPSIS, Token.LOGICAL_AND_ASSIGN, Token.LOGICAL_XOR_ASSIGN, Token.LOGICAL_OR_ASSIGN,
+            Token.UNSIGNED_RIGHT_SHIFT, Token.STRICT_EQUALS, Token.STRICT_NOT_EQUALS, Token.LSHIFT_ASSIGN, Token.RSHIFT_ASSIGN,
+            Token.DESCENDANTS, Token.COLON_COLON, Token.INCREMENT, Token.DECREMENT, Token.LEFT_SHIFT,
+            Token.RIGHT_SHIFT, Token.EQUALS, Token.NOT_EQUALS, Token.LE, Token.GE,
+            Token.LOGICAL_AND, Token.LOGICAL_OR, Token.ADD_ASSIGN, Token.SUBTRACT_ASSIGN, Token.MULTIPLY_ASSIGN,
+            Token.DIVIDE_ASSIGN, Token.REMAINDER_ASSIGN, Token.BIT_AND_ASSIGN, Token.BIT_XOR_ASSIGN, Token.BIT_OR_ASSIGN,
+        };
+        PROBES = new int[probes.length][];
+        for (int i = 0; i != probes.length; ++i)
+        {
+            PROBES[i] = probes[i].codePoints().toArray();
+        }
+        PROBE_TYPES = types;
+    }
+
+    /*
+     * Same bounds check as the scanner's matchingArray().
+     */
+    static private boolean matchingArray(int[] charCodes, int index, int[] probe)
+    {
+        if (index + probe.length >= charCodes.length)
+        {
+            return false;
+        }
+        for (int i = 0; i != probe.length; ++i)
+        {
+            if (charCodes[index + i] != probe[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static private Token singleCharacter(int ch)
+    {
+        switch (ch)
+        {
+            case 0x2e:
+                return Token.DOT;
+            case 0x2c:
+                return Token.COMMA;
+            case 0x3d:
+                return Token.ASSIGN;
+            case 0x3a:
+                return Token.COLON;
+            case 0x3b:
+                return Token.SEMICOLON;
+            case 0x28:
+                return Token.LPAREN;
+            case 0x29:
+                return Token.RPAREN;
+            case 0x5B:
+                return Token.LBRACKET;
+            case 0x5D:
+                return Token.RBRACKET;
+            case 0x7B:
+                return Token.LBRACE;
+            case 0x7D:
+                return Token.RBRACE;
+            case 0x40:
+                return Token.ATTRIBUTE;
+            case 0x3f:
+                return Token.QUESTION_MARK;
+            case 0x21:
+                return Token.EXCLAMATION_MARK;
+            case 0x2b:
+                return Token.PLUS;
+            case 0x2d:
+                return Token.MINUS;
+            case 0x2a:
+                return Token.TIMES;
+            case 0x2f:
+                return Token.SLASH;
+            case 0x25:
+                return Token.REMAINDER;
+            case 0x26:
+                return Token.BIT_AND;
+            case 0x5e:
+                return Token.BIT_XOR;
+            case 0x7c:
+                return Token.BIT_OR;
+            case 0x7e:
+                return Token.BIT_NOT;
+            case 0x3c:
+                return Token.LT;
+            case 0x3e:
+                return Token.GT;
+            default:
+                return null;
+        }
+    }
+
+    /*
+     * Same tries as the lexer's punctuator table.
+     */
+    static private final class PunctuatorState
+    {
+        public Token type = null;
+        public int[] edgeCharCodes = new int[0];
+        public PunctuatorState[] edgeStates = new PunctuatorState[0];
+
+        public PunctuatorState next(int ch)
+        {
+            for (int i = 0; i != edgeCharCodes.length; ++i)
+            {
+                if (edgeCharCodes[i] == ch)
+                {
+                    return edgeStates[i];
+                }
+            }
+            return null;
+        }
+
+        public PunctuatorState nextOrCreate(int ch)
+        {
+            var state = next(ch);
+            if (state == null)
+            {
+                int l = edgeCharCodes.length;
+                state = new PunctuatorState();
+                edgeCharCodes = Arrays.copyOf(edgeCharCodes, l + 1);
+                edgeStates = Arrays.copyOf(edgeStates, l + 1);
+                edgeCharCodes[l] = ch;
+                edgeStates[l] = state;
+            }
+            return state;
+        }
+    }
+
+    static private final PunctuatorState[] PUNCTUATORS = new PunctuatorState[0x80];
+
+    static
+    {
+        for (int i = 0x21; i != 0x7f; ++i)
+        {
+            var type = singleCharacter(i);
+            if (type != null)
+            {
+                definePunctuator(new int[] {i}, type);
+            }
+        }
+        for (int i = 0; i != PROBES.length; ++i)
+        {
+            definePunctuator(PROBES[i], PROBE_TYPES[i]);
+        }
+    }
+
+    static private void definePunctuator(int[] charCodes, Token type)
+    {
+        int ch = charCodes[0];
+        var state = PUNCTUATORS[ch];
+        if (state == null)
+        {
+            state = PUNCTUATORS[ch] = new PunctuatorState();
+        }
+        for (int i = 1; i != charCodes.length; ++i)
+        {
+            state = state.nextOrCreate(charCodes[i]);
+        }
+        state.type = type;
+    }
+}
@@ -5,9 +5,83 @@ import java.util.Vector;
 
 public final class Ast
 {
+    /**
+     * Nodes do not hold a <code>Span</code>. The public <code>span</code>
+     * field they used to have is replaced by <code>span()</code>, which
+     * builds one, <code>setSpan()</code>, and the position accessors, which
+     * build nothing; code reading or assigning the field must move to them.
+     */
     static public class Node
     {
-        public Span span;
+        /*
+         * Span packed as <code>(line &lt;&lt; 32) | index</code> for its first
+         * and last position, so that nodes do not hold a <code>Span</code>.
+         */
+        long spanStart;
+        long spanEnd;
+
+        /**
+         * Returns a new <code>Span</code> for the node.
+         */
+        public Span span()
+        {
+            return new Span(firstLine(), start(), lastLine(), end());
+        }
+
+        public void setSpan(Span span)
+        {
+            setSpan(span.firstLine(), span.start(), span.lastLine(), span.end());
+        }
+
+        public void setSpan(int firstLine, int start, int lastLine, int end)
+        {
+            setSpan(((long) firstLine << 32) | start, ((long) lastLine << 32) | end);
+        }
+
+        void setSpan(long start, long end)
+        {
+            spanStart = start;
+            spanEnd = end;
+        }
+
+        long spanStart()
+        {
+            return spanStart;
+        }
+
+        long spanEnd()
+        {
+            return spanEnd;
+        }
+
+        public int firstLine()
+        {
+            return (int) (spanStart >>> 32);
+        }
+
+        public int start()
+        {
+            return (int) spanStart;
+        }
+
+        public int lastLine()
+        {
+            return (int) (spanEnd >>> 32);
+        }
+
+        public int end()
+        {
+            return (int) spanEnd;
+        }
+
+        /**
+         * Returns the number of nodes of this tree, this one included,
+         * parsing skipped function bodies.
+         */
+        public int countNodes()
+        {
+            return AstLayout.countNodes(this);
+        }
     }
 
     static public class PatternNode extends Node
@@ -57,6 +131,16 @@ public final class Ast
         public Symbol semNsSymbol = null;
         private int _modifiers = 0;
 
+        int modifiers()
+        {
+            return _modifiers;
+        }
+
+        void setModifiers(int modifiers)
+        {
+            _modifiers = modifiers;
+        }
+
         public boolean markStatic()
         {
             return (_modifiers & 1) != 0;
@@ -569,9 +653,10 @@ public final class Ast
         public Vector<VarBindingNode> optParams;
         public String rest;
         public ExpressionNode result;
-        public Node body;
         public Symbol semNsFrame = null;
+        private Node _body;
         private int _flags = 0;
+        LazyFunctionBody lazyBody = null;
 
         public FunctionCommonNode(Vector<PatternNode> params, Vector<VarBindingNode> optParams, String rest, ExpressionNode result, Node body)
         {
@@ -580,7 +665,86 @@ public final class Ast
             this.optParams = optParams;
             this.rest = rest;
             this.result = result;
-            this.body = body;
+            _body = body;
+        }
+
+        /**
+         * Indicates whether the body was skipped by a lazy parse and has not
+         * been parsed yet.
+         */
+        public synchronized boolean hasLazyBody()
+        {
+            return lazyBody != null;
+        }
+
+        /**
+         * Indicates whether the function has a body, without parsing a body
+         * skipped by a lazy parse.
+         */
+        public synchronized boolean hasBody()
+        {
+            return _body != null || lazyBody != null;
+        }
+
+        /**
+         * Returns the body, parsing it first if it was skipped by a lazy parse.
+         * Syntax errors found then are collected into the script and
+         * <code>bodyFailed()</code> indicates them; the result is
+         * <code>null</code> if they stopped the parse.
+         */
+        public synchronized Node body()
+        {
+            if (lazyBody != null)
+            {
+                _body = lazyBody.parse();
+                if (lazyBody.failed())
+                {
+                    _flags |= 16;
+                }
+                lazyBody = null;
+            }
+            return _body;
+        }
+
+        /**
+         * Parses the body first if it was skipped by a lazy parse, and
+         * indicates whether that parse found syntax errors. Errors of a
+         * skipped body are not reported before it is parsed.
+         */
+        public synchronized boolean bodyFailed()
+        {
+            body();
+            return (_flags & 16) != 0;
+        }
+
+        public synchronized void setBody(Node body)
+        {
+            _body = body;
+            lazyBody = null;
+        }
+
+        /*
+         * The body as parsed so far, without parsing a lazy one. Callers
+         * hold the node's lock.
+         */
+        Node parsedBody()
+        {
+            return _body;
+        }
+
+        void setParsedBody(Node body)
+        {
+            _body = body;
+        }
+
+        int flags()
+        {
+            return _flags;
+        }
+
+        void setFlags(int flags)
+        {
+            _flags = flags;
         }
 
         public boolean markGetter()
@@ -865,6 +1029,12 @@ public final class Ast
     static public final class NumericLiteralNode extends ExpressionNode
     {
         public double value;
+        /**
+         * Exact value of a literal written as an integer that fits in a long,
+         * as told by <code>isIntegral</code>.
+         */
+        public long longValue;
+        public boolean isIntegral;
 
         public NumericLiteralNode(double value)
         {
@@ -0,0 +1,971 @@
+package com.recoyx.sxc.parser;
+
+import com.recoyx.sxc.semantics.MetaData;
+import com.recoyx.sxc.semantics.MetaDataEntry;
+import com.recoyx.sxc.semantics.Operator;
+import com.recoyx.sxc.util.IntVector;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+/**
+ * On-disk cache of parsed programs. Entries are keyed by a hash of the
+ * source text, its normalized URL and the classes of the parser, and hold
+ * the program's nodes, spans, comments and line tables, including those of
+ * included scripts. The cache is off when those classes cannot be read.
+ *
+ * Only programs parsed without any problem are stored. An entry is ignored if
+ * any file it includes has changed since it was stored. Scripts restored from
+ * an entry keep comments only if the stored ones did. Function bodies skipped
+ * by a lazy parse are stored as the position to resume from, and are parsed
+ * from the restored script when requested.
+ *
+ * Nodes are written by kind, with the fields that <code>AstLayout</code>
+ * declares for the kind, and a load rebuilds the whole program from the
+ * entry. The cache is only used by a compiler given a directory for it.
+ */
+public final class AstCache
+{
+    static private final int MAGIC = 0x53584341;
+    static private final int FORMAT_VERSION = 5;
+
+    /*
+     * Tags of nodes and scripts, of metadata values and of XML names and
+     * contents. Other values are written without a tag, as the node kind
+     * gives their types.
+     */
+    static private final int TAG_NULL = 0;
+    static private final int TAG_NEW = 1;
+    static private final int TAG_REFERENCE = 2;
+    static private final int TAG_STRING = 3;
+    static private final int TAG_DOUBLE = 4;
+    static private final int TAG_FALSE = 5;
+    static private final int TAG_TRUE = 6;
+
+    /*
+     * Hash of the class files of the parser and of the semantics library,
+     * so that entries written by another build are never read.
+     */
+    static private final byte[] BUILD_HASH = buildHash();
+
+    private Path _directory;
+
+    public AstCache(Path directory)
+    {
+        _directory = directory;
+    }
+
+    public Path directory()
+    {
+        return _directory;
+    }
+
+    /**
+     * Indicates whether the classes of the parser could be read to key
+     * entries. If not, nothing is loaded or stored.
+     */
+    public boolean isEnabled()
+    {
+        return BUILD_HASH != null;
+    }
+
+    /**
+     * Returns the cached program for the given source, or <code>null</code>
+     * if there is no valid entry. The program's script is created with the
+     * given URL and name table.
+     */
+    public Ast.ProgramNode load(SourceText source, String url, NameTable nameTable)
+    {
+        if (!isEnabled())
+        {
+            return null;
+        }
+        try (var channel = FileChannel.open(entryPath(source, url), StandardOpenOption.READ))
+        {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(buffer, source, url, nameTable).readProgram();
+        }
+        catch (IOException | RuntimeException exc)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Stores a program. Returns <code>false</code>
+     * if the program was not stored, either because a script has problems or
+     * passes its comments to a sink, or because the entry could not be written.
+     */
+    public boolean store(Ast.ProgramNode program)
+    {
+        var script = program.script;
+        if (!isEnabled() || script.commentSink() != null)
+        {
+            return false;
+        }
+        byte[] bytes;
+        try
+        {
+            var writer = new Writer(script);
+            writer.writeProgram(program);
+            if (!problemFree(script))
+            {
+                return false;
+            }
+            bytes = writer.toByteArray();
+        }
+        catch (RuntimeException exc)
+        {
+            return false;
+        }
+
+        try
+        {
+            Files.createDirectories(_directory);
+            var path = entryPath(script.sourceText(), script.url());
+            var temporary = Files.createTempFile(_directory, path.getFileName().toString(), ".tmp");
+            Files.write(temporary, bytes);
+            try
+            {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException exc)
+            {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        }
+        catch (IOException exc)
+        {
+            return false;
+        }
+    }
+
+    static private boolean problemFree(Script script)
+    {
+        if (script.problems.size() != 0)
+        {
+            return false;
+        }
+        if (script.subscripts != null)
+        {
+            for (var subscript : script.subscripts)
+            {
+                if (!problemFree(subscript))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Spans and relative includes depend on the URL, so equal sources at
+     * different paths have different entries.
+     */
+    private Path entryPath(SourceText source, String url)
+    {
+        var digest = newDigest();
+        digest.update(BUILD_HASH);
+        digest.update(normalizeURL(url).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(source.bytes());
+        var hex = new StringBuilder();
+        for (var b : digest.digest())
+        {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return _directory.resolve(hex.append(".ast").toString());
+    }
+
+    static private String normalizeURL(String url)
+    {
+        try
+        {
+            var uri = new URI(url);
+            if ("file".equals(uri.getScheme()))
+            {
+                return Paths.get(uri).toAbsolutePath().normalize().toUri().toString();
+            }
+            return uri.normalize().toString();
+        }
+        catch (URISyntaxException | IllegalArgumentException exc)
+        {
+            return url;
+        }
+    }
+
+    static private MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException exc)
+        {
+            throw new IllegalStateException(exc);
+        }
+    }
+
+    /*
+     * Hashes the jar or class directory holding the parser, and the one
+     * holding the semantics library if different. Returns null if either
+     * cannot be read.
+     */
+    static private byte[] buildHash()
+    {
+        try
+        {
+            var digest = newDigest();
+            var locations = new Vector<Path>();
+            for (var c : new Class<?>[] {AstCache.class, MetaData.class})
+            {
+                var codeSource = c.getProtectionDomain().getCodeSource();
+                if (codeSource == null || codeSource.getLocation() == null)
+                {
+                    return null;
+                }
+                var location = Paths.get(codeSource.getLocation().toURI());
+                if (locations.contains(location))
+                {
+                    continue;
+                }
+                locations.add(location);
+                if (!Files.isDirectory(location))
+                {
+                    digest.update(Files.readAllBytes(location));
+                    continue;
+                }
+                var files = new Vector<Path>();
+                try (var walk = Files.walk(location))
+                {
+                    walk.filter(file -> file.toString().endsWith(".class")).sorted().forEach(files::add);
+                }
+                for (var file : files)
+                {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+            return digest.digest();
+        }
+        catch (IOException | URISyntaxException | RuntimeException exc)
+        {
+            return null;
+        }
+    }
+
+    static private final class Writer implements AstLayout.Fields
+    {
+        private byte[] _bytes = new byte[4096];
+        private int _length = 0;
+        private Script _root;
+        private IdentityHashMap<Object, Integer> _objects = new IdentityHashMap<>();
+        private HashMap<String, Integer> _strings = new HashMap<>();
+
+        public Writer(Script root)
+        {
+            _root = root;
+        }
+
+        public byte[] toByteArray()
+        {
+            return Arrays.copyOf(_bytes, _length);
+        }
+
+        public void writeProgram(Ast.ProgramNode program)
+        {
+            writeInt(MAGIC);
+            writeInt(FORMAT_VERSION);
+            node(program);
+        }
+
+        public <T extends Ast.Node> T node(T node)
+        {
+            if (node == null)
+            {
+                writeByte(TAG_NULL);
+            }
+            else if (!writeReference(node))
+            {
+                int kind = AstLayout.kindOf(node);
+                if (kind == -1)
+                {
+                    throw new IllegalStateException("Unserializable node: " + node.getClass().getName());
+                }
+                writeByte(TAG_NEW);
+                writeVarInt(kind);
+                writeSpan(node.spanStart(), node.spanEnd());
+                AstLayout.transfer(node, node, kind, this);
+            }
+            return node;
+        }
+
+        public <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            writeVarInt(nodes == null ? 0 : nodes.size() + 1);
+            if (nodes != null)
+            {
+                for (var node : nodes)
+                {
+                    node(node);
+                }
+            }
+            return nodes;
+        }
+
+        public <T extends Ast.Node> T target(T node)
+        {
+            return node(node);
+        }
+
+        public Script script(Script script)
+        {
+            if (script == null)
+            {
+                writeByte(TAG_NULL);
+            }
+            else if (!writeReference(script))
+            {
+                writeByte(TAG_NEW);
+                writeScript(script);
+            }
+            return script;
+        }
+
+        /*
+         * Input offsets are not written, as the restored script is read
+         * in code units.
+         */
+        public LazyFunctionBody lazyBody(LazyFunctionBody lazy)
+        {
+            booleanValue(lazy != null);
+            if (lazy != null)
+            {
+                script(lazy.script);
+                booleanValue(lazy.forFunctionDefinition);
+                booleanValue(lazy.atConstructor);
+                writeVarInt(lazy.index);
+                writeVarInt(lazy.line);
+                writeTokenMetrics(lazy.openBrace);
+                writeTokenMetrics(lazy.previousToken);
+            }
+            return lazy;
+        }
+
+        public String string(String value)
+        {
+            if (value == null)
+            {
+                writeVarInt(0);
+                return null;
+            }
+            var index = _strings.get(value);
+            if (index != null)
+            {
+                writeVarInt(index + 2);
+                return value;
+            }
+            _strings.put(value, _strings.size());
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(1);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+            return value;
+        }
+
+        public Vector<String> strings(Vector<String> values)
+        {
+            writeVarInt(values == null ? 0 : values.size() + 1);
+            if (values != null)
+            {
+                for (var value : values)
+                {
+                    string(value);
+                }
+            }
+            return values;
+        }
+
+        public boolean booleanValue(boolean value)
+        {
+            writeByte(value ? 1 : 0);
+            return value;
+        }
+
+        public int intValue(int value)
+        {
+            writeVarInt(zigZag(value));
+            return value;
+        }
+
+        public long longValue(long value)
+        {
+            writeVarInt((int) (value >>> 32));
+            writeVarInt((int) value);
+            return value;
+        }
+
+        public double doubleValue(double value)
+        {
+            long bits = Double.doubleToRawLongBits(value);
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+            return value;
+        }
+
+        public Operator operator(Operator value)
+        {
+            writeVarInt(value == null ? 0 : value.ordinal() + 1);
+            return value;
+        }
+
+        public Span span(Span span)
+        {
+            booleanValue(span != null);
+            if (span != null)
+            {
+                writeSpan(((long) span.firstLine() << 32) | span.start(), ((long) span.lastLine() << 32) | span.end());
+            }
+            return span;
+        }
+
+        public Vector<MetaData> metaData(Vector<MetaData> metaData)
+        {
+            writeVarInt(metaData == null ? 0 : metaData.size() + 1);
+            if (metaData != null)
+            {
+                for (var element : metaData)
+                {
+                    string(element.name);
+                    writeVarInt(element.entries == null ? 0 : element.entries.size() + 1);
+                    if (element.entries != null)
+                    {
+                        for (var entry : element.entries)
+                        {
+                            string(entry.name);
+                            writeConstant(entry.value);
+                        }
+                    }
+                }
+            }
+            return metaData;
+        }
+
+        public Object xmlValue(Object value)
+        {
+            if (value instanceof String)
+            {
+                writeByte(TAG_STRING);
+                string((String) value);
+            }
+            else
+            {
+                node((Ast.Node) value);
+            }
+            return value;
+        }
+
+        private void writeConstant(Object value)
+        {
+            if (value == null)
+            {
+                writeByte(TAG_NULL);
+            }
+            else if (value instanceof String)
+            {
+                writeByte(TAG_STRING);
+                string((String) value);
+            }
+            else if (value instanceof Double)
+            {
+                writeByte(TAG_DOUBLE);
+                doubleValue((Double) value);
+            }
+            else if (value instanceof Boolean)
+            {
+                writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            }
+            else
+            {
+                throw new IllegalStateException("Unserializable metadata value: " + value.getClass().getName());
+            }
+        }
+
+        private boolean writeReference(Object value)
+        {
+            var index = _objects.get(value);
+            if (index == null)
+            {
+                _objects.put(value, _objects.size());
+                return false;
+            }
+            writeByte(TAG_REFERENCE);
+            writeVarInt(index);
+            return true;
+        }
+
+        private void writeSpan(long start, long end)
+        {
+            writeVarInt((int) (start >>> 32));
+            writeVarInt((int) start);
+            writeVarInt((int) (end >>> 32) - (int) (start >>> 32));
+            writeVarInt((int) end - (int) start);
+        }
+
+        private void writeTokenMetrics(TokenMetrics token)
+        {
+            writeVarInt(token.type.ordinal());
+            string(token.stringValue);
+            doubleValue(token.numberValue);
+            longValue(token.longValue);
+            booleanValue(token.isIntegral);
+            booleanValue(token.booleanValue);
+            string(token.regExpFlags);
+            writeVarInt(token.start);
+            writeVarInt(token.end);
+            writeVarInt(token.firstLine);
+            writeVarInt(token.lastLine);
+        }
+
+        /*
+         * The root script's source is the cache key and is not written.
+         */
+        private void writeScript(Script script)
+        {
+            string(script.url());
+            string(script == _root ? null : script.source());
+            booleanValue(script.keepsComments());
+            nodes(script.comments);
+            writeIntVector(script.lineStarts);
+            writeIntVector(script.lineStartCodeUnits());
+            writeIntVector(script.supplementaryIndices());
+            writeVarInt(script.subscripts == null ? 0 : script.subscripts.size() + 1);
+            if (script.subscripts != null)
+            {
+                for (var subscript : script.subscripts)
+                {
+                    script(subscript);
+                }
+            }
+        }
+
+        private void writeIntVector(IntVector vector)
+        {
+            writeVarInt(vector.length());
+            int previous = 0;
+            for (int i = 0; i != vector.length(); ++i)
+            {
+                writeVarInt(zigZag(vector.get(i) - previous));
+                previous = vector.get(i);
+            }
+        }
+
+        private void writeVarInt(int value)
+        {
+            while ((value & ~0x7f) != 0)
+            {
+                writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        private void writeInt(int value)
+        {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        private void writeBytes(byte[] bytes)
+        {
+            if (_length + bytes.length > _bytes.length)
+            {
+                _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length << 1, _length + bytes.length));
+            }
+            System.arraycopy(bytes, 0, _bytes, _length, bytes.length);
+            _length += bytes.length;
+        }
+
+        private void writeByte(int value)
+        {
+            if (_length == _bytes.length)
+            {
+                _bytes = Arrays.copyOf(_bytes, _bytes.length << 1);
+            }
+            _bytes[_length++] = (byte) value;
+        }
+
+        static private int zigZag(int value)
+        {
+            return (value << 1) ^ (value >> 31);
+        }
+    }
+
+    /*
+     * Reads values in the order the writer wrote them. The values given to
+     * its field methods are those of a new node and are ignored.
+     */
+    static private final class Reader implements AstLayout.Fields
+    {
+        static private final Token[] TOKENS = Token.values();
+        static private final Operator[] OPERATORS = Operator.values();
+
+        private ByteBuffer _buffer;
+        private SourceText _rootSource;
+        private String _rootURL;
+        private NameTable _nameTable;
+        private Vector<Object> _objects = new Vector<>();
+        private Vector<String> _strings = new Vector<>();
+        private IdentityHashMap<Script, UnderlyingParser> _parsers = new IdentityHashMap<>();
+
+        public Reader(ByteBuffer buffer, SourceText rootSource, String rootURL, NameTable nameTable)
+        {
+            _buffer = buffer;
+            _rootSource = rootSource;
+            _rootURL = rootURL;
+            _nameTable = nameTable;
+        }
+
+        public Ast.ProgramNode readProgram() throws IOException
+        {
+            if (_buffer.getInt() != MAGIC || _buffer.getInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Incompatible cache entry");
+            }
+            return node((Ast.ProgramNode) null);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T extends Ast.Node> T node(T node)
+        {
+            switch (_buffer.get())
+            {
+                case TAG_NULL:
+                    return null;
+                case TAG_REFERENCE:
+                    return (T) _objects.get(readVarInt());
+                case TAG_NEW:
+                {
+                    int kind = readVarInt();
+                    var node2 = AstLayout.newNode(kind);
+                    _objects.add(node2);
+                    int firstLine = readVarInt();
+                    int start = readVarInt();
+                    node2.setSpan(firstLine, start, firstLine + readVarInt(), start + readVarInt());
+                    AstLayout.transfer(node2, node2, kind, this);
+                    return (T) node2;
+                }
+                default:
+                    throw new IllegalStateException("Malformed cache entry");
+            }
+        }
+
+        public <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            int size = readVarInt() - 1;
+            if (size == -1)
+            {
+                return null;
+            }
+            var nodes2 = new Vector<T>(size);
+            for (int i = 0; i != size; ++i)
+            {
+                nodes2.add(node((T) null));
+            }
+            return nodes2;
+        }
+
+        public <T extends Ast.Node> T target(T node)
+        {
+            return node(node);
+        }
+
+        public Script script(Script script)
+        {
+            switch (_buffer.get())
+            {
+                case TAG_NULL:
+                    return null;
+                case TAG_REFERENCE:
+                    return (Script) _objects.get(readVarInt());
+                case TAG_NEW:
+                    return readScript();
+                default:
+                    throw new IllegalStateException("Malformed cache entry");
+            }
+        }
+
+        public LazyFunctionBody lazyBody(LazyFunctionBody lazy)
+        {
+            if (!booleanValue(false))
+            {
+                return null;
+            }
+            var script = script(null);
+            var lazy2 = new LazyFunctionBody(parserFor(script), booleanValue(false), booleanValue(false));
+            lazy2.index = readVarInt();
+            lazy2.offset = script.getCodeUnitOffset(lazy2.index);
+            lazy2.line = readVarInt();
+            readTokenMetrics(lazy2.openBrace, script);
+            readTokenMetrics(lazy2.previousToken, script);
+            script.setSkippedFunctionBodies();
+            return lazy2;
+        }
+
+        public String string(String value)
+        {
+            int index = readVarInt();
+            if (index == 0)
+            {
+                return null;
+            }
+            if (index != 1)
+            {
+                return _strings.get(index - 2);
+            }
+            var bytes = new byte[readVarInt()];
+            _buffer.get(bytes);
+            var str = _nameTable.intern(new String(bytes, StandardCharsets.UTF_8));
+            _strings.add(str);
+            return str;
+        }
+
+        public Vector<String> strings(Vector<String> values)
+        {
+            int size = readVarInt() - 1;
+            if (size == -1)
+            {
+                return null;
+            }
+            var values2 = new Vector<String>(size);
+            for (int i = 0; i != size; ++i)
+            {
+                values2.add(string(null));
+            }
+            return values2;
+        }
+
+        public boolean booleanValue(boolean value)
+        {
+            return _buffer.get() != 0;
+        }
+
+        public int intValue(int value)
+        {
+            return unZigZag(readVarInt());
+        }
+
+        public long longValue(long value)
+        {
+            long high = readVarInt();
+            return (high << 32) | (readVarInt() & 0xffffffffL);
+        }
+
+        public double doubleValue(double value)
+        {
+            return Double.longBitsToDouble(((long) _buffer.getInt() << 32) | (_buffer.getInt() & 0xffffffffL));
+        }
+
+        public Operator operator(Operator value)
+        {
+            int index = readVarInt();
+            return index == 0 ? null : OPERATORS[index - 1];
+        }
+
+        public Span span(Span span)
+        {
+            if (!booleanValue(false))
+            {
+                return null;
+            }
+            int firstLine = readVarInt();
+            int start = readVarInt();
+            return new Span(firstLine, start, firstLine + readVarInt(), start + readVarInt());
+        }
+
+        public Vector<MetaData> metaData(Vector<MetaData> metaData)
+        {
+            int size = readVarInt() - 1;
+            if (size == -1)
+            {
+                return null;
+            }
+            var metaData2 = new Vector<MetaData>(size);
+            for (int i = 0; i != size; ++i)
+            {
+                var name = string(null);
+                int numEntries = readVarInt() - 1;
+                var entries = numEntries == -1 ? null : new Vector<MetaDataEntry>(numEntries);
+                for (int j = 0; j < numEntries; ++j)
+                {
+                    var entryName = string(null);
+                    entries.add(new MetaDataEntry(entryName, readConstant()));
+                }
+                metaData2.add(new MetaData(name, entries));
+            }
+            return metaData2;
+        }
+
+        public Object xmlValue(Object value)
+        {
+            if (_buffer.get(_buffer.position()) == TAG_STRING)
+            {
+                _buffer.get();
+                return string(null);
+            }
+            return node((Ast.Node) null);
+        }
+
+        private Object readConstant()
+        {
+            switch (_buffer.get())
+            {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                    return string(null);
+                case TAG_DOUBLE:
+                    return doubleValue(0);
+                case TAG_FALSE:
+                    return false;
+                case TAG_TRUE:
+                    return true;
+                default:
+                    throw new IllegalStateException("Malformed cache entry");
+            }
+        }
+
+        private void readTokenMetrics(TokenMetrics token, Script script)
+        {
+            token.type = TOKENS[readVarInt()];
+            token.stringValue = string(null);
+            token.numberValue = doubleValue(0);
+            token.longValue = longValue(0);
+            token.isIntegral = booleanValue(false);
+            token.booleanValue = booleanValue(false);
+            token.regExpFlags = string(null);
+            token.start = readVarInt();
+            token.startOffset = script.getCodeUnitOffset(token.start);
+            token.end = readVarInt();
+            token.firstLine = readVarInt();
+            token.lastLine = readVarInt();
+        }
+
+        /*
+         * Bodies of a script are parsed by one parser reading its source in
+         * code units, which takes input offsets from the restored line tables.
+         */
+        private UnderlyingParser parserFor(Script script)
+        {
+            var parser = _parsers.get(script);
+            if (parser == null)
+            {
+                var lexer = new Lexer(script, LexerInput.fromString(script.source()));
+                lexer.reset(0, 1);
+                parser = new UnderlyingParser(lexer);
+                parser.lazyFunctionBodies = true;
+                _parsers.put(script, parser);
+            }
+            return parser;
+        }
+
+        /*
+         * The root script is the one without a stored source. Included
+         * scripts are read again from their files; the entry is stale if any
+         * of them changed.
+         */
+        private Script readScript()
+        {
+            var url = string(null);
+            var source = string(null);
+            Script script;
+            if (source == null)
+            {
+                script = new Script(_rootSource, _rootURL, _nameTable);
+            }
+            else
+            {
+                String current;
+                try
+                {
+                    current = SourceText.read(Paths.get(new URI(url))).toString();
+                }
+                catch (URISyntaxException | IOException exc)
+                {
+                    throw new IllegalStateException(exc);
+                }
+                if (!current.equals(source))
+                {
+                    throw new IllegalStateException("Included source changed: " + url);
+                }
+                script = new Script(source, url, _nameTable);
+            }
+            _objects.add(script);
+            script.setKeepsComments(booleanValue(false));
+            script.comments = nodes(null);
+            readIntVector(script.lineStarts);
+            readIntVector(script.lineStartCodeUnits());
+            readIntVector(script.supplementaryIndices());
+            int numSubscripts = readVarInt() - 1;
+            if (numSubscripts != -1)
+            {
+                script.subscripts = new Vector<>(numSubscripts);
+                for (int i = 0; i != numSubscripts; ++i)
+                {
+                    script.subscripts.add(script(null));
+                }
+            }
+            return script;
+        }
+
+        private void readIntVector(IntVector vector)
+        {
+            int length = readVarInt();
+            vector.setLength(0);
+            int value = 0;
+            for (int i = 0; i != length; ++i)
+            {
+                value += unZigZag(readVarInt());
+                vector.push(value);
+            }
+        }
+
+        private int readVarInt()
+        {
+            int value = 0;
+            for (int shift = 0;; shift += 7)
+            {
+                int b = _buffer.get();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+        }
+
+        static private int unZigZag(int value)
+        {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.recoyx.sxc.parser;
+
+import com.recoyx.sxc.semantics.MetaData;
+import com.recoyx.sxc.semantics.MetaDataEntry;
+import java.util.IdentityHashMap;
+import java.util.Vector;
+
+/**
+ * Deep copy of nodes and of the scripts they refer to, so that each include
+ * directive of a source shared through an include cache has its own nodes.
+ * Verifier results are not copied, and pending lazy bodies are copied once
+ * parsed.
+ */
+final class AstCopier
+{
+    private IdentityHashMap<Object, Object> _copies = new IdentityHashMap<>();
+    private IdentityHashMap<Script, Integer> _numProblems = null;
+
+    public AstCopier()
+    {
+    }
+
+    /*
+     * Scripts are copied with only their first problems given by the map,
+     * leaving out those that lazily parsed bodies add later.
+     */
+    public AstCopier(IdentityHashMap<Script, Integer> numProblems)
+    {
+        _numProblems = numProblems;
+    }
+
+    /**
+     * Makes an object stand for itself or for another in copies.
+     */
+    public void map(Object original, Object copy)
+    {
+        _copies.put(original, copy);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T copy(T value)
+    {
+        return (T) copyValue(value);
+    }
+
+    private Object copyValue(Object value)
+    {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean)
+        {
+            return value;
+        }
+        var copy = _copies.get(value);
+        if (copy != null)
+        {
+            return copy;
+        }
+        if (value instanceof Vector)
+        {
+            var vector = (Vector<?>) value;
+            var vector2 = new Vector<Object>(vector.size());
+            for (var element : vector)
+            {
+                vector2.add(copyValue(element));
+            }
+            return vector2;
+        }
+        if (value instanceof Ast.Node)
+        {
+            return copyNode((Ast.Node) value);
+        }
+        if (value instanceof Script)
+        {
+            return copyScript((Script) value);
+        }
+        if (value instanceof Problem)
+        {
+            var problem = (Problem) value;
+            var problem2 = new Problem(problem.type(), problem.errorId(), problem.span(), copy(problem.script()), problem.arguments());
+            _copies.put(problem, problem2);
+            return problem2;
+        }
+        throw new IllegalStateException("Uncopyable value: " + value.getClass().getName());
+    }
+
+    private Ast.Node copyNode(Ast.Node node)
+    {
+        int kind = AstLayout.kindOf(node);
+        if (kind == -1)
+        {
+            throw new IllegalStateException("Uncopyable node: " + node.getClass().getName());
+        }
+        var node2 = AstLayout.newNode(kind);
+        _copies.put(node, node2);
+        node2.setSpan(node.spanStart(), node.spanEnd());
+        AstLayout.transfer(node, node2, kind, _fields);
+        return node2;
+    }
+
+    private final AstLayout.Fields _fields = new AstLayout.Fields()
+    {
+        public <T extends Ast.Node> T node(T node)
+        {
+            return copy(node);
+        }
+
+        public <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            return copy(nodes);
+        }
+
+        public <T extends Ast.Node> T target(T node)
+        {
+            return copy(node);
+        }
+
+        public Script script(Script script)
+        {
+            return copy(script);
+        }
+
+        public LazyFunctionBody lazyBody(LazyFunctionBody lazy)
+        {
+            return lazy == null ? null : new LazyFunctionBody(lazy, copy(lazy.script));
+        }
+
+        public Vector<String> strings(Vector<String> values)
+        {
+            return copy(values);
+        }
+
+        public Vector<MetaData> metaData(Vector<MetaData> metaData)
+        {
+            if (metaData == null)
+            {
+                return null;
+            }
+            var metaData2 = new Vector<MetaData>(metaData.size());
+            for (var element : metaData)
+            {
+                Vector<MetaDataEntry> entries = null;
+                if (element.entries != null)
+                {
+                    entries = new Vector<>(element.entries.size());
+                    for (var entry : element.entries)
+                    {
+                        entries.add(new MetaDataEntry(entry.name, entry.value));
+                    }
+                }
+                metaData2.add(new MetaData(element.name, entries));
+            }
+            return metaData2;
+        }
+
+        public Object xmlValue(Object value)
+        {
+            return copyValue(value);
+        }
+    };
+
+    private Script copyScript(Script script)
+    {
+        var script2 = new Script(script.sourceText(), script.url(), script.nameTable());
+        _copies.put(script, script2);
+        script2.setKeepsComments(script.keepsComments());
+        script2.setCommentSink(script.commentSink());
+        script2.copyPositions(script, 0, Integer.MAX_VALUE, 0, 0);
+        if (script.skippedFunctionBodies())
+        {
+            script2.setSkippedFunctionBodies();
+        }
+        script2.comments = copy(script.comments);
+        script2.subscripts = copy(script.subscripts);
+        var numProblems = _numProblems != null ? _numProblems.get(script) : null;
+        int l = numProblems != null ? numProblems : script.problems.size();
+        for (int i = 0; i != l; ++i)
+        {
+            script2.collectProblem(copy(script.problems.get(i)));
+        }
+        return script2;
+    }
+}
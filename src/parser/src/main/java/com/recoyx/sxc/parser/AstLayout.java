@@ -0,0 +1,1163 @@
+package com.recoyx.sxc.parser;
+
+import com.recoyx.sxc.semantics.MetaData;
+import com.recoyx.sxc.semantics.Operator;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Declared table of the node kinds of <code>Ast</code> and of the fields of
+ * each, for code that handles every node the same way. A kind is a number
+ * stored by the AST cache, so kinds are only ever appended. Verifier
+ * results (<code>semNs</code> fields) are not fields of a kind.
+ */
+final class AstLayout
+{
+    static private final int ARRAY_LITERAL = 0;
+    static private final int ARRAY_PATTERN = 1;
+    static private final int ASSIGNMENT = 2;
+    static private final int ATTRIBUTE_ID = 3;
+    static private final int BINARY_OPERATOR = 4;
+    static private final int BLOCK = 5;
+    static private final int BOOLEAN_LITERAL = 6;
+    static private final int BRACKETS = 7;
+    static private final int BREAK = 8;
+    static private final int CALL = 9;
+    static private final int CATCH = 10;
+    static private final int CLASS_DEFINITION = 11;
+    static private final int COMMENT = 12;
+    static private final int CONTINUE = 13;
+    static private final int DXNS_STATEMENT = 14;
+    static private final int DESCENDANTS = 15;
+    static private final int DO_STATEMENT = 16;
+    static private final int DOT = 17;
+    static private final int EMBED_EXPRESSION = 18;
+    static private final int EMPTY_STATEMENT = 19;
+    static private final int ENUM_DEFINITION = 20;
+    static private final int EXPRESSION_ID = 21;
+    static private final int EXPRESSION_STATEMENT = 22;
+    static private final int FILTER = 23;
+    static private final int FOR_IN_STATEMENT = 24;
+    static private final int FOR_STATEMENT = 25;
+    static private final int FUNCTION_COMMON = 26;
+    static private final int FUNCTION_DEFINITION = 27;
+    static private final int FUNCTION_EXPRESSION = 28;
+    static private final int IF_STATEMENT = 29;
+    static private final int IMPORT_DIRECTIVE = 30;
+    static private final int INCLUDE_DIRECTIVE = 31;
+    static private final int INTERFACE_DEFINITION = 32;
+    static private final int LABELED_STATEMENT = 33;
+    static private final int LIST_EXPRESSION = 34;
+    static private final int META_DATA_ENTRY = 35;
+    static private final int NAME_PATTERN = 36;
+    static private final int NAMESPACE_DEFINITION = 37;
+    static private final int NEW_OPERATOR = 38;
+    static private final int NULL_LITERAL = 39;
+    static private final int NULLABLE_TYPE = 40;
+    static private final int NUMERIC_LITERAL = 41;
+    static private final int OBJECT_FIELD = 42;
+    static private final int OBJECT_LITERAL = 43;
+    static private final int OBJECT_PATTERN_FIELD = 44;
+    static private final int OBJECT_PATTERN = 45;
+    static private final int PACKAGE_DEFINITION = 46;
+    static private final int PAREN_EXPRESSION = 47;
+    static private final int PATTERN_ASSIGNMENT = 48;
+    static private final int PROGRAM = 49;
+    static private final int REG_EXP_LITERAL = 50;
+    static private final int RESERVED_NAMESPACE = 51;
+    static private final int RETURN = 52;
+    static private final int SIMPLE_ID = 53;
+    static private final int SIMPLE_VAR_DECLARATION = 54;
+    static private final int STRING_LITERAL = 55;
+    static private final int SUPER_DOT = 56;
+    static private final int SUPER_STATEMENT = 57;
+    static private final int SWITCH_CASE = 58;
+    static private final int SWITCH_STATEMENT = 59;
+    static private final int SWITCH_TYPE_CASE = 60;
+    static private final int SWITCH_TYPE_STATEMENT = 61;
+    static private final int TERNARY = 62;
+    static private final int THIS_LITERAL = 63;
+    static private final int THROW = 64;
+    static private final int TRY_STATEMENT = 65;
+    static private final int TYPE_ARGUMENTS = 66;
+    static private final int TYPE_DEFINITION = 67;
+    static private final int TYPE_ID = 68;
+    static private final int TYPE_OPERATOR = 69;
+    static private final int UNARY_OPERATOR = 70;
+    static private final int USE_DEFAULT_DIRECTIVE = 71;
+    static private final int USE_DIRECTIVE = 72;
+    static private final int VAR_BINDING = 73;
+    static private final int VAR_DEFINITION = 74;
+    static private final int VAR_STATEMENT = 75;
+    static private final int VOID_EXPRESSION = 76;
+    static private final int VOID_TYPE = 77;
+    static private final int WHILE_STATEMENT = 78;
+    static private final int WITH_STATEMENT = 79;
+    static private final int XML_ATTRIBUTE = 80;
+    static private final int XML_ELEMENT = 81;
+    static private final int XML_LIST = 82;
+    static private final int XML_MARKUP = 83;
+    static private final int XML_TEXT = 84;
+
+    static public final int KIND_COUNT = 85;
+
+    static private final HashMap<Class<?>, Integer> KINDS = new HashMap<>();
+
+    static
+    {
+        for (int kind = 0; kind != KIND_COUNT; ++kind)
+        {
+            KINDS.put(newNode(kind).getClass(), kind);
+        }
+    }
+
+    /**
+     * Returns the kind of a node, or -1 if its class is not in the table.
+     */
+    static public int kindOf(Ast.Node node)
+    {
+        var kind = KINDS.get(node.getClass());
+        return kind == null ? -1 : kind;
+    }
+
+    /**
+     * Creates a node of the given kind, with every field left to be
+     * assigned.
+     */
+    static public Ast.Node newNode(int kind)
+    {
+        switch (kind)
+        {
+            case ARRAY_LITERAL:
+                return new Ast.ArrayLiteralNode(null, null);
+            case ARRAY_PATTERN:
+                return new Ast.ArrayPatternNode(null, null, null);
+            case ASSIGNMENT:
+                return new Ast.AssignmentNode(null, null, null);
+            case ATTRIBUTE_ID:
+                return new Ast.AttributeIDNode(null);
+            case BINARY_OPERATOR:
+                return new Ast.BinaryOperatorNode(null, null, null);
+            case BLOCK:
+                return new Ast.BlockNode(null);
+            case BOOLEAN_LITERAL:
+                return new Ast.BooleanLiteralNode(false);
+            case BRACKETS:
+                return new Ast.BracketsNode(null, null);
+            case BREAK:
+                return new Ast.BreakNode(null);
+            case CALL:
+                return new Ast.CallNode(null, null);
+            case CATCH:
+                return new Ast.CatchNode(null, null);
+            case CLASS_DEFINITION:
+                return new Ast.ClassDefinitionNode(null, null, null, null, null);
+            case COMMENT:
+                return new Ast.CommentNode(null, false);
+            case CONTINUE:
+                return new Ast.ContinueNode(null);
+            case DXNS_STATEMENT:
+                return new Ast.DXNSStatementNode(null);
+            case DESCENDANTS:
+                return new Ast.DescendantsNode(null, null);
+            case DO_STATEMENT:
+                return new Ast.DoStatementNode(null, null);
+            case DOT:
+                return new Ast.DotNode(null, null);
+            case EMBED_EXPRESSION:
+                return new Ast.EmbedExpressionNode(null);
+            case EMPTY_STATEMENT:
+                return new Ast.EmptyStatementNode();
+            case ENUM_DEFINITION:
+                return new Ast.EnumDefinitionNode(null, null, null);
+            case EXPRESSION_ID:
+                return new Ast.ExpressionIdNode(null, null);
+            case EXPRESSION_STATEMENT:
+                return new Ast.ExpressionStatementNode(null);
+            case FILTER:
+                return new Ast.FilterNode(null, null);
+            case FOR_IN_STATEMENT:
+                return new Ast.ForInStatementNode(false, null, null, null);
+            case FOR_STATEMENT:
+                return new Ast.ForStatementNode(null, null, null, null);
+            case FUNCTION_COMMON:
+                return new Ast.FunctionCommonNode(null, null, null, null, null);
+            case FUNCTION_DEFINITION:
+                return new Ast.FunctionDefinitionNode(null, null);
+            case FUNCTION_EXPRESSION:
+                return new Ast.FunctionExpressionNode(null, null);
+            case IF_STATEMENT:
+                return new Ast.IfStatementNode(null, null, null);
+            case IMPORT_DIRECTIVE:
+                return new Ast.ImportDirectiveNode(null, null, false);
+            case INCLUDE_DIRECTIVE:
+                return new Ast.IncludeDirectiveNode(null);
+            case INTERFACE_DEFINITION:
+                return new Ast.InterfaceDefinitionNode(null, null, null, null);
+            case LABELED_STATEMENT:
+                return new Ast.LabeledStatementNode(null, null);
+            case LIST_EXPRESSION:
+                return new Ast.ListExpressionNode(null);
+            case META_DATA_ENTRY:
+                return new Ast.MetaDataEntryNode(null, null);
+            case NAME_PATTERN:
+                return new Ast.NamePatternNode(null, null);
+            case NAMESPACE_DEFINITION:
+                return new Ast.NamespaceDefinitionNode(null, null);
+            case NEW_OPERATOR:
+                return new Ast.NewOperatorNode(null, null);
+            case NULL_LITERAL:
+                return new Ast.NullLiteralNode();
+            case NULLABLE_TYPE:
+                return new Ast.NullableTypeNode(null);
+            case NUMERIC_LITERAL:
+                return new Ast.NumericLiteralNode(0);
+            case OBJECT_FIELD:
+                return new Ast.ObjectFieldNode(null, null);
+            case OBJECT_LITERAL:
+                return new Ast.ObjectLiteralNode(null, null);
+            case OBJECT_PATTERN_FIELD:
+                return new Ast.ObjectPatternFieldNode(null, null);
+            case OBJECT_PATTERN:
+                return new Ast.ObjectPatternNode(null, null);
+            case PACKAGE_DEFINITION:
+                return new Ast.PackageDefinitionNode(null, null);
+            case PAREN_EXPRESSION:
+                return new Ast.ParenExpressionNode(null);
+            case PATTERN_ASSIGNMENT:
+                return new Ast.PatternAssignmentNode(null, null);
+            case PROGRAM:
+                return new Ast.ProgramNode(null, null);
+            case REG_EXP_LITERAL:
+                return new Ast.RegExpLiteralNode(null, null);
+            case RESERVED_NAMESPACE:
+                return new Ast.ReservedNamespaceNode(null);
+            case RETURN:
+                return new Ast.ReturnNode(null);
+            case SIMPLE_ID:
+                return new Ast.SimpleIdNode(null, null);
+            case SIMPLE_VAR_DECLARATION:
+                return new Ast.SimpleVarDeclarationNode(false, null);
+            case STRING_LITERAL:
+                return new Ast.StringLiteralNode(null);
+            case SUPER_DOT:
+                return new Ast.SuperDotNode(null, null);
+            case SUPER_STATEMENT:
+                return new Ast.SuperStatementNode(null);
+            case SWITCH_CASE:
+                return new Ast.SwitchCaseNode(null, null);
+            case SWITCH_STATEMENT:
+                return new Ast.SwitchStatementNode(null, null);
+            case SWITCH_TYPE_CASE:
+                return new Ast.SwitchTypeCaseNode(null, null);
+            case SWITCH_TYPE_STATEMENT:
+                return new Ast.SwitchTypeStatementNode(null, null);
+            case TERNARY:
+                return new Ast.TernaryNode(null, null, null);
+            case THIS_LITERAL:
+                return new Ast.ThisLiteralNode();
+            case THROW:
+                return new Ast.ThrowNode(null);
+            case TRY_STATEMENT:
+                return new Ast.TryStatementNode(null, null, null);
+            case TYPE_ARGUMENTS:
+                return new Ast.TypeArgumentsNode(null, null);
+            case TYPE_DEFINITION:
+                return new Ast.TypeDefinitionNode(null, null);
+            case TYPE_ID:
+                return new Ast.TypeIdNode(null, null);
+            case TYPE_OPERATOR:
+                return new Ast.TypeOperatorNode(null, null, null);
+            case UNARY_OPERATOR:
+                return new Ast.UnaryOperatorNode(null, null);
+            case USE_DEFAULT_DIRECTIVE:
+                return new Ast.UseDefaultDirectiveNode(null);
+            case USE_DIRECTIVE:
+                return new Ast.UseDirectiveNode(null);
+            case VAR_BINDING:
+                return new Ast.VarBindingNode(null, null);
+            case VAR_DEFINITION:
+                return new Ast.VarDefinitionNode(false, null);
+            case VAR_STATEMENT:
+                return new Ast.VarStatementNode(false, null, null);
+            case VOID_EXPRESSION:
+                return new Ast.VoidExpressionNode();
+            case VOID_TYPE:
+                return new Ast.VoidTypeNode();
+            case WHILE_STATEMENT:
+                return new Ast.WhileStatementNode(null, null);
+            case WITH_STATEMENT:
+                return new Ast.WithStatementNode(null, null);
+            case XML_ATTRIBUTE:
+                return new Ast.XMLAttributeNode(null, null);
+            case XML_ELEMENT:
+                return new Ast.XMLElementNode(null, null, null, null);
+            case XML_LIST:
+                return new Ast.XMLListNode(null);
+            case XML_MARKUP:
+                return new Ast.XMLMarkupNode(null);
+            case XML_TEXT:
+                return new Ast.XMLTextNode(null);
+            default:
+                throw new IllegalArgumentException("Unknown node kind: " + kind);
+        }
+    }
+
+    /**
+     * Passes each field of <code>source</code>, a node of the given kind, to
+     * <code>fields</code> and assigns the result to the same field of
+     * <code>target</code>, a node of the same kind. Both may be the same
+     * node. Fields are passed in a fixed order, so that a reader sees them
+     * in the order a writer did. The span of the node itself is not a field.
+     */
+    static public void transfer(Ast.Node source, Ast.Node target, int kind, Fields fields)
+    {
+        switch (kind)
+        {
+            case ARRAY_LITERAL:
+            {
+                var s = (Ast.ArrayLiteralNode) source;
+                var t = (Ast.ArrayLiteralNode) target;
+                t.elements = fields.nodes(s.elements);
+                t.rest = fields.node(s.rest);
+                break;
+            }
+            case ARRAY_PATTERN:
+            {
+                var s = (Ast.ArrayPatternNode) source;
+                var t = (Ast.ArrayPatternNode) target;
+                t.type = fields.node(s.type);
+                t.elements = fields.nodes(s.elements);
+                t.rest = fields.node(s.rest);
+                break;
+            }
+            case ASSIGNMENT:
+            {
+                var s = (Ast.AssignmentNode) source;
+                var t = (Ast.AssignmentNode) target;
+                t.compound = fields.operator(s.compound);
+                t.left = fields.node(s.left);
+                t.right = fields.node(s.right);
+                break;
+            }
+            case ATTRIBUTE_ID:
+            {
+                var s = (Ast.AttributeIDNode) source;
+                var t = (Ast.AttributeIDNode) target;
+                t.qualifier = fields.node(s.qualifier);
+                t.id = fields.node(s.id);
+                break;
+            }
+            case BINARY_OPERATOR:
+            {
+                var s = (Ast.BinaryOperatorNode) source;
+                var t = (Ast.BinaryOperatorNode) target;
+                t.type = fields.operator(s.type);
+                t.left = fields.node(s.left);
+                t.right = fields.node(s.right);
+                break;
+            }
+            case BLOCK:
+            {
+                var s = (Ast.BlockNode) source;
+                var t = (Ast.BlockNode) target;
+                t.directives = fields.nodes(s.directives);
+                break;
+            }
+            case BOOLEAN_LITERAL:
+            {
+                var s = (Ast.BooleanLiteralNode) source;
+                var t = (Ast.BooleanLiteralNode) target;
+                t.value = fields.booleanValue(s.value);
+                break;
+            }
+            case BRACKETS:
+            {
+                var s = (Ast.BracketsNode) source;
+                var t = (Ast.BracketsNode) target;
+                t.base = fields.node(s.base);
+                t.key = fields.node(s.key);
+                break;
+            }
+            case BREAK:
+            {
+                var s = (Ast.BreakNode) source;
+                var t = (Ast.BreakNode) target;
+                t.label = fields.string(s.label);
+                t.targetStatement = fields.target(s.targetStatement);
+                break;
+            }
+            case CALL:
+            {
+                var s = (Ast.CallNode) source;
+                var t = (Ast.CallNode) target;
+                t.base = fields.node(s.base);
+                t.arguments = fields.nodes(s.arguments);
+                break;
+            }
+            case CATCH:
+            {
+                var s = (Ast.CatchNode) source;
+                var t = (Ast.CatchNode) target;
+                t.pattern = fields.node(s.pattern);
+                t.block = fields.node(s.block);
+                break;
+            }
+            case CLASS_DEFINITION:
+            {
+                var s = (Ast.ClassDefinitionNode) source;
+                var t = (Ast.ClassDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.name = fields.string(s.name);
+                t.typeParams = fields.strings(s.typeParams);
+                t.extendsNode = fields.node(s.extendsNode);
+                t.implementsList = fields.nodes(s.implementsList);
+                t.block = fields.node(s.block);
+                break;
+            }
+            case COMMENT:
+            {
+                var s = (Ast.CommentNode) source;
+                var t = (Ast.CommentNode) target;
+                t.content = fields.string(s.content);
+                t.multiline = fields.booleanValue(s.multiline);
+                break;
+            }
+            case CONTINUE:
+            {
+                var s = (Ast.ContinueNode) source;
+                var t = (Ast.ContinueNode) target;
+                t.label = fields.string(s.label);
+                t.targetStatement = fields.target(s.targetStatement);
+                break;
+            }
+            case DXNS_STATEMENT:
+            {
+                var s = (Ast.DXNSStatementNode) source;
+                var t = (Ast.DXNSStatementNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case DESCENDANTS:
+            {
+                var s = (Ast.DescendantsNode) source;
+                var t = (Ast.DescendantsNode) target;
+                t.base = fields.node(s.base);
+                t.id = fields.node(s.id);
+                break;
+            }
+            case DO_STATEMENT:
+            {
+                var s = (Ast.DoStatementNode) source;
+                var t = (Ast.DoStatementNode) target;
+                t.substatement = fields.node(s.substatement);
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case DOT:
+            {
+                var s = (Ast.DotNode) source;
+                var t = (Ast.DotNode) target;
+                t.base = fields.node(s.base);
+                t.id = fields.node(s.id);
+                break;
+            }
+            case EMBED_EXPRESSION:
+            {
+                var s = (Ast.EmbedExpressionNode) source;
+                var t = (Ast.EmbedExpressionNode) target;
+                t.src = fields.string(s.src);
+                break;
+            }
+            case EMPTY_STATEMENT:
+                break;
+            case ENUM_DEFINITION:
+            {
+                var s = (Ast.EnumDefinitionNode) source;
+                var t = (Ast.EnumDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.name = fields.string(s.name);
+                t.type = fields.node(s.type);
+                t.block = fields.node(s.block);
+                break;
+            }
+            case EXPRESSION_ID:
+            {
+                var s = (Ast.ExpressionIdNode) source;
+                var t = (Ast.ExpressionIdNode) target;
+                t.qualifier = fields.node(s.qualifier);
+                t.key = fields.node(s.key);
+                break;
+            }
+            case EXPRESSION_STATEMENT:
+            {
+                var s = (Ast.ExpressionStatementNode) source;
+                var t = (Ast.ExpressionStatementNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case FILTER:
+            {
+                var s = (Ast.FilterNode) source;
+                var t = (Ast.FilterNode) target;
+                t.base = fields.node(s.base);
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case FOR_IN_STATEMENT:
+            {
+                var s = (Ast.ForInStatementNode) source;
+                var t = (Ast.ForInStatementNode) target;
+                t.isEach = fields.booleanValue(s.isEach);
+                t.left = fields.node(s.left);
+                t.right = fields.node(s.right);
+                t.substatement = fields.node(s.substatement);
+                break;
+            }
+            case FOR_STATEMENT:
+            {
+                var s = (Ast.ForStatementNode) source;
+                var t = (Ast.ForStatementNode) target;
+                t.expression1 = fields.node(s.expression1);
+                t.expression2 = fields.node(s.expression2);
+                t.expression3 = fields.node(s.expression3);
+                t.substatement = fields.node(s.substatement);
+                break;
+            }
+            case FUNCTION_COMMON:
+            {
+                var s = (Ast.FunctionCommonNode) source;
+                var t = (Ast.FunctionCommonNode) target;
+                t.params = fields.nodes(s.params);
+                t.optParams = fields.nodes(s.optParams);
+                t.rest = fields.string(s.rest);
+                t.result = fields.node(s.result);
+                t.setFlags(fields.intValue(s.flags()));
+                synchronized (s)
+                {
+                    t.setParsedBody(fields.node(s.parsedBody()));
+                    t.lazyBody = fields.lazyBody(s.lazyBody);
+                }
+                break;
+            }
+            case FUNCTION_DEFINITION:
+            {
+                var s = (Ast.FunctionDefinitionNode) source;
+                var t = (Ast.FunctionDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.name = fields.string(s.name);
+                t.common = fields.node(s.common);
+                break;
+            }
+            case FUNCTION_EXPRESSION:
+            {
+                var s = (Ast.FunctionExpressionNode) source;
+                var t = (Ast.FunctionExpressionNode) target;
+                t.name = fields.string(s.name);
+                t.common = fields.node(s.common);
+                break;
+            }
+            case IF_STATEMENT:
+            {
+                var s = (Ast.IfStatementNode) source;
+                var t = (Ast.IfStatementNode) target;
+                t.expression = fields.node(s.expression);
+                t.consequent = fields.node(s.consequent);
+                t.alternative = fields.node(s.alternative);
+                break;
+            }
+            case IMPORT_DIRECTIVE:
+            {
+                var s = (Ast.ImportDirectiveNode) source;
+                var t = (Ast.ImportDirectiveNode) target;
+                t.alias = fields.string(s.alias);
+                t.aliasSpan = fields.span(s.aliasSpan);
+                t.importName = fields.string(s.importName);
+                t.importNameSpan = fields.span(s.importNameSpan);
+                t.wildcard = fields.booleanValue(s.wildcard);
+                break;
+            }
+            case INCLUDE_DIRECTIVE:
+            {
+                var s = (Ast.IncludeDirectiveNode) source;
+                var t = (Ast.IncludeDirectiveNode) target;
+                t.src = fields.string(s.src);
+                t.subscript = fields.script(s.subscript);
+                t.subpackages = fields.nodes(s.subpackages);
+                t.subdirectives = fields.nodes(s.subdirectives);
+                break;
+            }
+            case INTERFACE_DEFINITION:
+            {
+                var s = (Ast.InterfaceDefinitionNode) source;
+                var t = (Ast.InterfaceDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.name = fields.string(s.name);
+                t.typeParams = fields.strings(s.typeParams);
+                t.extendsList = fields.nodes(s.extendsList);
+                t.block = fields.node(s.block);
+                break;
+            }
+            case LABELED_STATEMENT:
+            {
+                var s = (Ast.LabeledStatementNode) source;
+                var t = (Ast.LabeledStatementNode) target;
+                t.label = fields.string(s.label);
+                t.substatement = fields.node(s.substatement);
+                break;
+            }
+            case LIST_EXPRESSION:
+            {
+                var s = (Ast.ListExpressionNode) source;
+                var t = (Ast.ListExpressionNode) target;
+                t.expressions = fields.nodes(s.expressions);
+                break;
+            }
+            case META_DATA_ENTRY:
+            {
+                var s = (Ast.MetaDataEntryNode) source;
+                var t = (Ast.MetaDataEntryNode) target;
+                t.name = fields.string(s.name);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.literal = fields.node(s.literal);
+                break;
+            }
+            case NAME_PATTERN:
+            {
+                var s = (Ast.NamePatternNode) source;
+                var t = (Ast.NamePatternNode) target;
+                t.type = fields.node(s.type);
+                t.name = fields.string(s.name);
+                break;
+            }
+            case NAMESPACE_DEFINITION:
+            {
+                var s = (Ast.NamespaceDefinitionNode) source;
+                var t = (Ast.NamespaceDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.name = fields.string(s.name);
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case NEW_OPERATOR:
+            {
+                var s = (Ast.NewOperatorNode) source;
+                var t = (Ast.NewOperatorNode) target;
+                t.base = fields.node(s.base);
+                t.arguments = fields.nodes(s.arguments);
+                break;
+            }
+            case NULL_LITERAL:
+                break;
+            case NULLABLE_TYPE:
+            {
+                var s = (Ast.NullableTypeNode) source;
+                var t = (Ast.NullableTypeNode) target;
+                t.type = fields.node(s.type);
+                break;
+            }
+            case NUMERIC_LITERAL:
+            {
+                var s = (Ast.NumericLiteralNode) source;
+                var t = (Ast.NumericLiteralNode) target;
+                t.value = fields.doubleValue(s.value);
+                t.longValue = fields.longValue(s.longValue);
+                t.isIntegral = fields.booleanValue(s.isIntegral);
+                break;
+            }
+            case OBJECT_FIELD:
+            {
+                var s = (Ast.ObjectFieldNode) source;
+                var t = (Ast.ObjectFieldNode) target;
+                t.key = fields.node(s.key);
+                t.value = fields.node(s.value);
+                break;
+            }
+            case OBJECT_LITERAL:
+            {
+                var s = (Ast.ObjectLiteralNode) source;
+                var t = (Ast.ObjectLiteralNode) target;
+                t.fields = fields.nodes(s.fields);
+                t.rest = fields.node(s.rest);
+                break;
+            }
+            case OBJECT_PATTERN_FIELD:
+            {
+                var s = (Ast.ObjectPatternFieldNode) source;
+                var t = (Ast.ObjectPatternFieldNode) target;
+                t.id = fields.node(s.id);
+                t.subpattern = fields.node(s.subpattern);
+                break;
+            }
+            case OBJECT_PATTERN:
+            {
+                var s = (Ast.ObjectPatternNode) source;
+                var t = (Ast.ObjectPatternNode) target;
+                t.type = fields.node(s.type);
+                t.fields = fields.nodes(s.fields);
+                break;
+            }
+            case PACKAGE_DEFINITION:
+            {
+                var s = (Ast.PackageDefinitionNode) source;
+                var t = (Ast.PackageDefinitionNode) target;
+                t.id = fields.string(s.id);
+                t.block = fields.node(s.block);
+                t.script = fields.script(s.script);
+                break;
+            }
+            case PAREN_EXPRESSION:
+            {
+                var s = (Ast.ParenExpressionNode) source;
+                var t = (Ast.ParenExpressionNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case PATTERN_ASSIGNMENT:
+            {
+                var s = (Ast.PatternAssignmentNode) source;
+                var t = (Ast.PatternAssignmentNode) target;
+                t.left = fields.node(s.left);
+                t.right = fields.node(s.right);
+                break;
+            }
+            case PROGRAM:
+            {
+                var s = (Ast.ProgramNode) source;
+                var t = (Ast.ProgramNode) target;
+                t.packages = fields.nodes(s.packages);
+                t.directives = fields.nodes(s.directives);
+                t.script = fields.script(s.script);
+                break;
+            }
+            case REG_EXP_LITERAL:
+            {
+                var s = (Ast.RegExpLiteralNode) source;
+                var t = (Ast.RegExpLiteralNode) target;
+                t.body = fields.string(s.body);
+                t.flags = fields.string(s.flags);
+                break;
+            }
+            case RESERVED_NAMESPACE:
+            {
+                var s = (Ast.ReservedNamespaceNode) source;
+                var t = (Ast.ReservedNamespaceNode) target;
+                t.type = fields.string(s.type);
+                break;
+            }
+            case RETURN:
+            {
+                var s = (Ast.ReturnNode) source;
+                var t = (Ast.ReturnNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case SIMPLE_ID:
+            {
+                var s = (Ast.SimpleIdNode) source;
+                var t = (Ast.SimpleIdNode) target;
+                t.qualifier = fields.node(s.qualifier);
+                t.name = fields.string(s.name);
+                break;
+            }
+            case SIMPLE_VAR_DECLARATION:
+            {
+                var s = (Ast.SimpleVarDeclarationNode) source;
+                var t = (Ast.SimpleVarDeclarationNode) target;
+                t.readOnly = fields.booleanValue(s.readOnly);
+                t.bindings = fields.nodes(s.bindings);
+                break;
+            }
+            case STRING_LITERAL:
+            {
+                var s = (Ast.StringLiteralNode) source;
+                var t = (Ast.StringLiteralNode) target;
+                t.value = fields.string(s.value);
+                break;
+            }
+            case SUPER_DOT:
+            {
+                var s = (Ast.SuperDotNode) source;
+                var t = (Ast.SuperDotNode) target;
+                t.arguments = fields.nodes(s.arguments);
+                t.id = fields.node(s.id);
+                break;
+            }
+            case SUPER_STATEMENT:
+            {
+                var s = (Ast.SuperStatementNode) source;
+                var t = (Ast.SuperStatementNode) target;
+                t.arguments = fields.nodes(s.arguments);
+                break;
+            }
+            case SWITCH_CASE:
+            {
+                var s = (Ast.SwitchCaseNode) source;
+                var t = (Ast.SwitchCaseNode) target;
+                t.expression = fields.node(s.expression);
+                t.directives = fields.nodes(s.directives);
+                break;
+            }
+            case SWITCH_STATEMENT:
+            {
+                var s = (Ast.SwitchStatementNode) source;
+                var t = (Ast.SwitchStatementNode) target;
+                t.discriminant = fields.node(s.discriminant);
+                t.caseNodes = fields.nodes(s.caseNodes);
+                break;
+            }
+            case SWITCH_TYPE_CASE:
+            {
+                var s = (Ast.SwitchTypeCaseNode) source;
+                var t = (Ast.SwitchTypeCaseNode) target;
+                t.pattern = fields.node(s.pattern);
+                t.block = fields.node(s.block);
+                break;
+            }
+            case SWITCH_TYPE_STATEMENT:
+            {
+                var s = (Ast.SwitchTypeStatementNode) source;
+                var t = (Ast.SwitchTypeStatementNode) target;
+                t.discriminant = fields.node(s.discriminant);
+                t.caseNodes = fields.nodes(s.caseNodes);
+                break;
+            }
+            case TERNARY:
+            {
+                var s = (Ast.TernaryNode) source;
+                var t = (Ast.TernaryNode) target;
+                t.expression1 = fields.node(s.expression1);
+                t.expression2 = fields.node(s.expression2);
+                t.expression3 = fields.node(s.expression3);
+                break;
+            }
+            case THIS_LITERAL:
+                break;
+            case THROW:
+            {
+                var s = (Ast.ThrowNode) source;
+                var t = (Ast.ThrowNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case TRY_STATEMENT:
+            {
+                var s = (Ast.TryStatementNode) source;
+                var t = (Ast.TryStatementNode) target;
+                t.block = fields.node(s.block);
+                t.catchNodes = fields.nodes(s.catchNodes);
+                t.finallyBlock = fields.node(s.finallyBlock);
+                break;
+            }
+            case TYPE_ARGUMENTS:
+            {
+                var s = (Ast.TypeArgumentsNode) source;
+                var t = (Ast.TypeArgumentsNode) target;
+                t.base = fields.node(s.base);
+                t.arguments = fields.nodes(s.arguments);
+                break;
+            }
+            case TYPE_DEFINITION:
+            {
+                var s = (Ast.TypeDefinitionNode) source;
+                var t = (Ast.TypeDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.name = fields.string(s.name);
+                t.type = fields.node(s.type);
+                break;
+            }
+            case TYPE_ID:
+            {
+                var s = (Ast.TypeIdNode) source;
+                var t = (Ast.TypeIdNode) target;
+                t.name = fields.string(s.name);
+                t.type = fields.node(s.type);
+                break;
+            }
+            case TYPE_OPERATOR:
+            {
+                var s = (Ast.TypeOperatorNode) source;
+                var t = (Ast.TypeOperatorNode) target;
+                t.operator = fields.string(s.operator);
+                t.left = fields.node(s.left);
+                t.right = fields.node(s.right);
+                t.pattern = fields.node(s.pattern);
+                break;
+            }
+            case UNARY_OPERATOR:
+            {
+                var s = (Ast.UnaryOperatorNode) source;
+                var t = (Ast.UnaryOperatorNode) target;
+                t.type = fields.operator(s.type);
+                t.argument = fields.node(s.argument);
+                break;
+            }
+            case USE_DEFAULT_DIRECTIVE:
+            {
+                var s = (Ast.UseDefaultDirectiveNode) source;
+                var t = (Ast.UseDefaultDirectiveNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case USE_DIRECTIVE:
+            {
+                var s = (Ast.UseDirectiveNode) source;
+                var t = (Ast.UseDirectiveNode) target;
+                t.expression = fields.node(s.expression);
+                break;
+            }
+            case VAR_BINDING:
+            {
+                var s = (Ast.VarBindingNode) source;
+                var t = (Ast.VarBindingNode) target;
+                t.pattern = fields.node(s.pattern);
+                t.initialiser = fields.node(s.initialiser);
+                break;
+            }
+            case VAR_DEFINITION:
+            {
+                var s = (Ast.VarDefinitionNode) source;
+                var t = (Ast.VarDefinitionNode) target;
+                t.metaDataArray = fields.metaData(s.metaDataArray);
+                t.accessModifier = fields.node(s.accessModifier);
+                t.nameSpan = fields.span(s.nameSpan);
+                t.setModifiers(fields.intValue(s.modifiers()));
+                t.readOnly = fields.booleanValue(s.readOnly);
+                t.bindings = fields.nodes(s.bindings);
+                break;
+            }
+            case VAR_STATEMENT:
+            {
+                var s = (Ast.VarStatementNode) source;
+                var t = (Ast.VarStatementNode) target;
+                t.readOnly = fields.booleanValue(s.readOnly);
+                t.bindings = fields.nodes(s.bindings);
+                t.substatement = fields.node(s.substatement);
+                break;
+            }
+            case VOID_EXPRESSION:
+                break;
+            case VOID_TYPE:
+                break;
+            case WHILE_STATEMENT:
+            {
+                var s = (Ast.WhileStatementNode) source;
+                var t = (Ast.WhileStatementNode) target;
+                t.expression = fields.node(s.expression);
+                t.substatement = fields.node(s.substatement);
+                break;
+            }
+            case WITH_STATEMENT:
+            {
+                var s = (Ast.WithStatementNode) source;
+                var t = (Ast.WithStatementNode) target;
+                t.expression = fields.node(s.expression);
+                t.substatement = fields.node(s.substatement);
+                break;
+            }
+            case XML_ATTRIBUTE:
+            {
+                var s = (Ast.XMLAttributeNode) source;
+                var t = (Ast.XMLAttributeNode) target;
+                t.name = fields.string(s.name);
+                t.value = fields.xmlValue(s.value);
+                break;
+            }
+            case XML_ELEMENT:
+            {
+                var s = (Ast.XMLElementNode) source;
+                var t = (Ast.XMLElementNode) target;
+                t.openName = fields.xmlValue(s.openName);
+                t.closeName = fields.xmlValue(s.closeName);
+                t.attributes = fields.nodes(s.attributes);
+                t.childNodes = fields.nodes(s.childNodes);
+                break;
+            }
+            case XML_LIST:
+            {
+                var s = (Ast.XMLListNode) source;
+                var t = (Ast.XMLListNode) target;
+                t.nodes = fields.nodes(s.nodes);
+                break;
+            }
+            case XML_MARKUP:
+            {
+                var s = (Ast.XMLMarkupNode) source;
+                var t = (Ast.XMLMarkupNode) target;
+                t.content = fields.string(s.content);
+                break;
+            }
+            case XML_TEXT:
+            {
+                var s = (Ast.XMLTextNode) source;
+                var t = (Ast.XMLTextNode) target;
+                t.content = fields.xmlValue(s.content);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown node kind: " + kind);
+        }
+    }
+
+    /**
+     * Returns the number of nodes of a tree, parsing skipped function bodies.
+     */
+    static public int countNodes(Ast.Node node)
+    {
+        var counter = new NodeCounter();
+        counter.node(node);
+        return counter.count;
+    }
+
+    static private final class NodeCounter implements Fields
+    {
+        public int count = 0;
+
+        public <T extends Ast.Node> T node(T node)
+        {
+            if (node != null)
+            {
+                ++count;
+                if (node instanceof Ast.FunctionCommonNode)
+                {
+                    ((Ast.FunctionCommonNode) node).body();
+                }
+                transfer(node, node, kindOf(node), this);
+            }
+            return node;
+        }
+
+        public <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            if (nodes != null)
+            {
+                for (var node : nodes)
+                {
+                    node(node);
+                }
+            }
+            return nodes;
+        }
+
+        public Object xmlValue(Object value)
+        {
+            return value instanceof Ast.Node ? node((Ast.Node) value) : value;
+        }
+    }
+
+    /**
+     * Receives the current value of each field of a node and returns the
+     * value to assign. By default values are returned as they are.
+     */
+    static interface Fields
+    {
+        default <T extends Ast.Node> T node(T node)
+        {
+            return node;
+        }
+
+        default <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            return nodes;
+        }
+
+        /**
+         * A node that is not a child, such as the statement a
+         * <code>break</code> leaves. It is one of the node's ancestors.
+         */
+        default <T extends Ast.Node> T target(T node)
+        {
+            return node;
+        }
+
+        default Script script(Script script)
+        {
+            return script;
+        }
+
+        /**
+         * A function body skipped by a lazy parse, passed after the body
+         * parsed so far.
+         */
+        default LazyFunctionBody lazyBody(LazyFunctionBody lazy)
+        {
+            return lazy;
+        }
+
+        default String string(String value)
+        {
+            return value;
+        }
+
+        default Vector<String> strings(Vector<String> values)
+        {
+            return values;
+        }
+
+        default boolean booleanValue(boolean value)
+        {
+            return value;
+        }
+
+        default int intValue(int value)
+        {
+            return value;
+        }
+
+        default long longValue(long value)
+        {
+            return value;
+        }
+
+        default double doubleValue(double value)
+        {
+            return value;
+        }
+
+        default Operator operator(Operator value)
+        {
+            return value;
+        }
+
+        default Span span(Span span)
+        {
+            return span;
+        }
+
+        default Vector<MetaData> metaData(Vector<MetaData> metaData)
+        {
+            return metaData;
+        }
+
+        /**
+         * Name or content of XML: a string, or the expression node of an
+         * interpolation.
+         */
+        default Object xmlValue(Object value)
+        {
+            return value;
+        }
+    }
+
+    private AstLayout()
+    {
+    }
+}
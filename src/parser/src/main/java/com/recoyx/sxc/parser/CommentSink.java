@@ -0,0 +1,10 @@
+package com.recoyx.sxc.parser;
+
+/**
+ * Receives the comments of a script as they are lexed, in place of
+ * <code>Script.comments</code>. Each comment is passed once, in source order.
+ */
+public interface CommentSink
+{
+    void comment(Script script, Ast.CommentNode comment);
+}
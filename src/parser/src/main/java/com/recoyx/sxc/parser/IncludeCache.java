@@ -0,0 +1,329 @@
+package com.recoyx.sxc.parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Included sources parsed during a compilation, shared by the parsers given
+ * the cache through <code>Parser.setIncludeCache()</code>. A source is parsed
+ * once for each kind of place it is included at, while its file keeps the
+ * same modification time and size, or the same content. Each include
+ * directive gets its own copy of the script and nodes of that parse, and
+ * parsers including the same source at the same time wait for one parse.
+ * A parse that refused to include a script enclosing the source is not
+ * kept, and a kept parse is not used where one of the scripts it includes
+ * encloses the include directive, so that results are those of parsing
+ * without the cache.
+ */
+public final class IncludeCache
+{
+    private ConcurrentHashMap<String, Pending> _entries = new ConcurrentHashMap<>();
+    /*
+     * Key each thread waits for, to find a thread about to wait on itself.
+     */
+    private ConcurrentHashMap<Thread, String> _waiting = new ConcurrentHashMap<>();
+    private AtomicInteger _numParses = new AtomicInteger();
+
+    /**
+     * Number of times an included source was parsed into the cache.
+     */
+    public int numParses()
+    {
+        return _numParses.get();
+    }
+
+    public void clear()
+    {
+        _entries.clear();
+    }
+
+    /*
+     * Parse of an included source. Its script and nodes are never given to
+     * an include directive; directives get copies from <code>copyTo()</code>.
+     */
+    static final class Entry
+    {
+        public final Script subscript;
+        public final Vector<Ast.PackageDefinitionNode> subpackages;
+        public final Vector<Ast.DirectiveNode> subdirectives;
+        public final FileTime modified;
+        public final long size;
+        /*
+         * Whether the parse refused to include a script that encloses the
+         * source, so that it holds only for the include chain it ran in.
+         */
+        public final boolean dependsOnIncluders;
+        /*
+         * URLs of the source and of every script it includes.
+         */
+        private final HashSet<String> _urls;
+        /*
+         * Problems of each script of the parse, before lazily parsed bodies
+         * add theirs.
+         */
+        private final IdentityHashMap<Script, Integer> _numProblems;
+
+        public Entry(Script subscript, Vector<Ast.PackageDefinitionNode> subpackages, Vector<Ast.DirectiveNode> subdirectives, BasicFileAttributes attributes, boolean dependsOnIncluders)
+        {
+            this.subscript = subscript;
+            this.subpackages = subpackages;
+            this.subdirectives = subdirectives;
+            this.modified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.dependsOnIncluders = dependsOnIncluders;
+            _numProblems = new IdentityHashMap<>();
+            _urls = new HashSet<>();
+            countProblems(subscript);
+        }
+
+        private Entry(Entry entry, BasicFileAttributes attributes)
+        {
+            this.subscript = entry.subscript;
+            this.subpackages = entry.subpackages;
+            this.subdirectives = entry.subdirectives;
+            this.modified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+            this.dependsOnIncluders = entry.dependsOnIncluders;
+            _numProblems = entry._numProblems;
+            _urls = entry._urls;
+        }
+
+        private void countProblems(Script script)
+        {
+            _numProblems.put(script, script.problems.size());
+            _urls.add(script.url());
+            if (script.subscripts != null)
+            {
+                for (var subscript : script.subscripts)
+                {
+                    countProblems(subscript);
+                }
+            }
+        }
+
+        /*
+         * Whether the source or a script it includes is one of the given
+         * URLs, which would have been refused there.
+         */
+        public boolean includesAny(Set<String> urls)
+        {
+            for (var url : _urls)
+            {
+                if (urls.contains(url))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void copyTo(Ast.IncludeDirectiveNode node)
+        {
+            var copier = new AstCopier(_numProblems);
+            node.subscript = copier.copy(subscript);
+            node.subpackages = copier.copy(subpackages);
+            node.subdirectives = copier.copy(subdirectives);
+        }
+    }
+
+    interface Parse
+    {
+        Entry parse() throws IOException;
+    }
+
+    static private final class Pending
+    {
+        public final FutureTask<Entry> task;
+        /*
+         * Thread running the parse, until it ends.
+         */
+        public volatile Thread runner = Thread.currentThread();
+
+        public Pending(Parse parse)
+        {
+            task = new FutureTask<>(parse::parse);
+        }
+
+        public Pending(Entry entry)
+        {
+            task = new FutureTask<>(() -> entry);
+            task.run();
+            runner = null;
+        }
+    }
+
+    /*
+     * Returns the entry for a file parsed at a kind of place, running the
+     * given parse if there is none or the file changed, or waiting for the
+     * parse another thread runs. A file touched without changing is read
+     * once to compare its content. The result is null if waiting would
+     * deadlock, as when two threads include each other's sources; the
+     * caller then parses the source itself. A parse that depends on its
+     * include chain is given only to the thread that ran it; others parse
+     * again.
+     *
+     * The attributes are those read before the file, so that a change made
+     * while it was parsed shows as a different modification time.
+     */
+    Entry get(String key, Path file, BasicFileAttributes attributes, Parse parse) throws IOException
+    {
+        for (;;)
+        {
+            var pending = _entries.get(key);
+            if (pending == null)
+            {
+                pending = new Pending(parse);
+                if (_entries.putIfAbsent(key, pending) == null)
+                {
+                    return run(key, pending);
+                }
+                continue;
+            }
+            Entry entry;
+            if (!pending.task.isDone())
+            {
+                if (!startWaiting(key, pending))
+                {
+                    return null;
+                }
+                try
+                {
+                    entry = result(pending.task);
+                }
+                finally
+                {
+                    _waiting.remove(Thread.currentThread());
+                }
+                if (entry == null)
+                {
+                    return null;
+                }
+            }
+            else
+            {
+                entry = result(pending.task);
+            }
+            if (entry.dependsOnIncluders)
+            {
+                _entries.remove(key, pending);
+                continue;
+            }
+
+            if (entry.modified.equals(attributes.lastModifiedTime()) && entry.size == attributes.size())
+            {
+                return entry;
+            }
+            if (entry.size == attributes.size() && unchanged(file, entry))
+            {
+                var entry2 = new Entry(entry, attributes);
+                _entries.replace(key, pending, new Pending(entry2));
+                return entry2;
+            }
+            var pending2 = new Pending(parse);
+            if (_entries.replace(key, pending, pending2))
+            {
+                return run(key, pending2);
+            }
+        }
+    }
+
+    private Entry run(String key, Pending pending) throws IOException
+    {
+        pending.task.run();
+        pending.runner = null;
+        try
+        {
+            var entry = result(pending.task);
+            _numParses.incrementAndGet();
+            if (entry.dependsOnIncluders)
+            {
+                _entries.remove(key, pending);
+            }
+            return entry;
+        }
+        catch (IOException | RuntimeException | Error exc)
+        {
+            _entries.remove(key, pending);
+            throw exc;
+        }
+    }
+
+    /*
+     * Registers the current thread as waiting for a key, unless the thread
+     * running its parse waits, directly or through other threads, for a
+     * parse the current thread runs. Threads register before looking, so
+     * that of two threads about to wait on each other one finds the other.
+     */
+    private boolean startWaiting(String key, Pending pending)
+    {
+        var current = Thread.currentThread();
+        _waiting.put(current, key);
+        var runner = pending.runner;
+        for (int i = _waiting.size(); runner != null && i != -1; --i)
+        {
+            if (runner == current)
+            {
+                _waiting.remove(current);
+                return false;
+            }
+            var key2 = _waiting.get(runner);
+            var pending2 = key2 != null ? _entries.get(key2) : null;
+            runner = pending2 != null ? pending2.runner : null;
+        }
+        return true;
+    }
+
+    static private Entry result(FutureTask<Entry> task) throws IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException exc)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException exc)
+        {
+            var cause = exc.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    static private boolean unchanged(Path file, Entry entry)
+    {
+        try
+        {
+            return SourceText.read(file).bytes().equals(entry.subscript.sourceText().bytes());
+        }
+        catch (IOException exc)
+        {
+            return false;
+        }
+    }
+
+    static BasicFileAttributes readAttributes(Path file) throws IOException
+    {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+}
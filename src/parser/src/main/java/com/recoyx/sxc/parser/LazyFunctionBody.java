@@ -0,0 +1,102 @@
+package com.recoyx.sxc.parser;
+
+import java.util.Vector;
+
+/**
+ * Function body skipped by a lazy parse: the position of its opening brace,
+ * from which the parser that skipped it resumes when the body is requested.
+ */
+final class LazyFunctionBody
+{
+    public UnderlyingParser parser;
+    public Script script;
+    public boolean forFunctionDefinition;
+    public boolean atConstructor;
+    public int index;
+    public int offset;
+    public int line;
+    public int tokenIndex;
+    public TokenMetrics openBrace = new TokenMetrics();
+    public TokenMetrics previousToken = new TokenMetrics();
+    /*
+     * Bodies of included scripts shared through an include cache may be
+     * requested from several threads, so the body is parsed once under the
+     * parser's lock. Each include directive has a copy of the body, made
+     * from the original's once that is parsed.
+     */
+    private LazyFunctionBody _original = null;
+    private boolean _parsed = false;
+    private Ast.Node _body = null;
+    private Vector<Problem> _problems = null;
+
+    public LazyFunctionBody(UnderlyingParser parser, boolean forFunctionDefinition, boolean atConstructor)
+    {
+        this.parser = parser;
+        this.script = parser.script;
+        this.forFunctionDefinition = forFunctionDefinition;
+        this.atConstructor = atConstructor;
+    }
+
+    /*
+     * Copy of a body for a copy of its script.
+     */
+    public LazyFunctionBody(LazyFunctionBody original, Script script)
+    {
+        this(original.parser, original.forFunctionDefinition, original.atConstructor);
+        this.script = script;
+        this.index = original.index;
+        this.offset = original.offset;
+        this.line = original.line;
+        this.tokenIndex = original.tokenIndex;
+        original.openBrace.copyTo(this.openBrace);
+        original.previousToken.copyTo(this.previousToken);
+        _original = original;
+    }
+
+    public synchronized Ast.Node parse()
+    {
+        if (!_parsed)
+        {
+            if (_original != null)
+            {
+                var body = _original.parse();
+                var copier = new AstCopier();
+                copier.map(_original.script, script);
+                _body = copier.copy(body);
+                _problems = new Vector<>();
+                for (var problem : _original.problems())
+                {
+                    _problems.add(script.collectProblem(copier.copy(problem)));
+                }
+            }
+            else
+            {
+                synchronized (parser)
+                {
+                    int numProblems = script.problems.size();
+                    _body = parser.parseLazyFunctionBody(this);
+                    _problems = new Vector<>(script.problems.subList(numProblems, script.problems.size()));
+                }
+            }
+            _parsed = true;
+        }
+        return _body;
+    }
+
+    /**
+     * Indicates whether the parse of the body found syntax errors, which are
+     * collected into the script. The body is then null or incomplete.
+     */
+    public synchronized boolean failed()
+    {
+        return _problems != null && _problems.size() != 0;
+    }
+
+    /*
+     * Problems found by the parse of the body.
+     */
+    private synchronized Vector<Problem> problems()
+    {
+        return _problems;
+    }
+}
@@ -1,6 +1,9 @@
 package com.recoyx.sxc.parser;
 
+import com.recoyx.sxc.util.IntVector;
 import com.recoyx.sxc.util.VectorUtils;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 import java.util.Vector;
 
@@ -16,46 +19,232 @@ public final class Lexer
     public TokenMetrics token = new TokenMetrics();
     public Lexer.Mode mode = Lexer.Mode.NORMAL;
 
-    private int[] _charCodes;
+    private LexerInput _input;
+    /*
+     * Position in code points, which is what spans are measured in.
+     */
     protected int index = 0;
+    /*
+     * Position in input units, kept in sync with index.
+     */
+    protected int offset = 0;
     protected int line = 1;
+    protected IntVector lineStartOffsets = new IntVector();
+    /*
+     * Number of tokens shifted, used as a position in the token buffer.
+     */
+    protected int tokenIndex = 0;
+    /*
+     * Rescan applied to the current token by the parser, if any.
+     */
+    protected int rescan = RESCAN_NONE;
     private int _sliceStart = -1;
     private Script _script;
+    private TokenBuffer _tokenBuffer = null;
 
-    static private int[] UNSIGNED_RSHIFT_ASSIGN = ">>>=".codePoints().toArray();
-    static private int[] ELLIPSIS = "...".codePoints().toArray();
-    static private int[] LOGICAL_AND_ASSIGN = "&&=".codePoints().toArray();
-    static private int[] LOGICAL_XOR_ASSIGN = "^^=".codePoints().toArray();
-    static private int[] LOGICAL_OR_ASSIGN = "||=".codePoints().toArray();
-    static private int[] UNSIGNED_RIGHT_SHIFT = ">>>".codePoints().toArray();
-    static private int[] EQUALS_3 = "===".codePoints().toArray();
-    static private int[] NOT_EQUALS_3 = "!==".codePoints().toArray();
-    static private int[] LSHIFT_ASSIGN = "<<=".codePoints().toArray();
-    static private int[] RSHIFT_ASSIGN = ">>=".codePoints().toArray();
-    static private int[] DESCENDANTS = "..".codePoints().toArray();
-    static private int[] COLON_COLON = "::".codePoints().toArray();
-    static private int[] INCREMENT = "++".codePoints().toArray();
-    static private int[] DECREMENT = "--".codePoints().toArray();
-    static private int[] LEFT_SHIFT = "<<".codePoints().toArray();
-    static private int[] RIGHT_SHIFT = ">>".codePoints().toArray();
-    static private int[] EQUALS = "==".codePoints().toArray();
-    static private int[] NOT_EQUALS = "!=".codePoints().toArray();
-    static private int[] LE = "<=".codePoints().toArray();
-    static private int[] GE = ">=".codePoints().toArray();
-    static private int[] LOGICAL_AND = "&&".codePoints().toArray();
-    static private int[] LOGICAL_OR = "||".codePoints().toArray();
-    static private int[] ADD_ASSIGN = "+=".codePoints().toArray();
-    static private int[] SUBTRACT_ASSIGN = "-=".codePoints().toArray();
-    static private int[] MULTIPLY_ASSIGN = "*=".codePoints().toArray();
-    static private int[] DIVIDE_ASSIGN = "/=".codePoints().toArray();
-    static private int[] REMAINDER_ASSIGN = "%=".codePoints().toArray();
-    static private int[] BIT_AND_ASSIGN = "&=".codePoints().toArray();
-    static private int[] BIT_XOR_ASSIGN = "^=".codePoints().toArray();
-    static private int[] BIT_OR_ASSIGN = "|=".codePoints().toArray();
+    static protected final int RESCAN_NONE = 0;
+    static protected final int RESCAN_REG_EXP = 1;
+    static protected final int RESCAN_XML_MARKUP = 2;
 
     static private int[] XML_CDATA_START = "![CDATA[".codePoints().toArray();
     static private int[] XML_COMMENT_START = "!--".codePoints().toArray();
 
+    /* Largest significand that can take another decimal digit up to 7. */
+    static private final long SIGNIFICAND_LIMIT = Long.MAX_VALUE / 10;
+    /* Significands up to 2^53 are exact doubles. */
+    static private final long EXACT_SIGNIFICAND_LIMIT = 1L << 53;
+    static private final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /*
+     * Keywords are recognized from the code point slice through a perfect hash
+     * of the slice length and its first two code points; a hit is confirmed
+     * with a single range comparison.
+     */
+    static private final int MAX_KEYWORD_LENGTH = 10;
+    static private final int KEYWORD_TABLE_MASK = 0x7f;
+    static private final int[][] KEYWORD_NAMES = new int[KEYWORD_TABLE_MASK + 1][];
+    static private final Token[] KEYWORD_TOKENS = new Token[KEYWORD_TABLE_MASK + 1];
+
+    static
+    {
+        defineKeyword("as", Token.AS);
+        defineKeyword("do", Token.DO);
+        defineKeyword("if", Token.IF);
+        defineKeyword("in", Token.IN);
+        defineKeyword("is", Token.IS);
+        defineKeyword("for", Token.FOR);
+        defineKeyword("new", Token.NEW);
+        defineKeyword("try", Token.TRY);
+        defineKeyword("use", Token.USE);
+        defineKeyword("var", Token.VAR);
+        defineKeyword("true", Token.BOOLEAN_LITERAL);
+        defineKeyword("case", Token.CASE);
+        defineKeyword("else", Token.ELSE);
+        defineKeyword("null", Token.NULL_LITERAL);
+        defineKeyword("this", Token.THIS_LITERAL);
+        defineKeyword("void", Token.VOID);
+        defineKeyword("with", Token.WITH);
+        defineKeyword("false", Token.BOOLEAN_LITERAL);
+        defineKeyword("break", Token.BREAK);
+        defineKeyword("catch", Token.CATCH);
+        defineKeyword("class", Token.CLASS);
+        defineKeyword("const", Token.CONST);
+        defineKeyword("super", Token.SUPER);
+        defineKeyword("throw", Token.THROW);
+        defineKeyword("while", Token.WHILE);
+        defineKeyword("yield", Token.YIELD);
+        defineKeyword("delete", Token.DELETE);
+        defineKeyword("import", Token.IMPORT);
+        defineKeyword("public", Token.PUBLIC);
+        defineKeyword("return", Token.RETURN);
+        defineKeyword("switch", Token.SWITCH);
+        defineKeyword("typeof", Token.TYPEOF);
+        defineKeyword("default", Token.DEFAULT);
+        defineKeyword("finally", Token.FINALLY);
+        defineKeyword("package", Token.PACKAGE);
+        defineKeyword("private", Token.PRIVATE);
+        defineKeyword("continue", Token.CONTINUE);
+        defineKeyword("function", Token.FUNCTION);
+        defineKeyword("internal", Token.INTERNAL);
+        defineKeyword("interface", Token.INTERFACE);
+        defineKeyword("protected", Token.PROTECTED);
+        defineKeyword("instanceof", Token.INSTANCEOF);
+    }
+
+    static private int hashKeyword(int length, int ch0, int ch1)
+    {
+        return (length * 31 + ch0 * 2 + ch1 * 15) & KEYWORD_TABLE_MASK;
+    }
+
+    static private void defineKeyword(String name, Token type)
+    {
+        var charCodes = name.codePoints().toArray();
+        int slot = hashKeyword(charCodes.length, charCodes[0], charCodes[1]);
+        if (KEYWORD_NAMES[slot] != null)
+        {
+            throw new IllegalStateException("Keyword hash collision: " + name);
+        }
+        KEYWORD_NAMES[slot] = charCodes;
+        KEYWORD_TOKENS[slot] = type;
+    }
+
+    /*
+     * Punctuators are dispatched on their first ASCII code point into a small
+     * trie, which is walked for the longest match.
+     */
+    static private final class PunctuatorState
+    {
+        public Token type = null;
+        public int[] edgeCharCodes = new int[0];
+        public PunctuatorState[] edgeStates = new PunctuatorState[0];
+
+        public PunctuatorState next(int ch)
+        {
+            for (int i = 0; i != edgeCharCodes.length; ++i)
+            {
+                if (edgeCharCodes[i] == ch)
+                {
+                    return edgeStates[i];
+                }
+            }
+            return null;
+        }
+
+        public PunctuatorState nextOrCreate(int ch)
+        {
+            var state = next(ch);
+            if (state == null)
+            {
+                int l = edgeCharCodes.length;
+                state = new PunctuatorState();
+                edgeCharCodes = Arrays.copyOf(edgeCharCodes, l + 1);
+                edgeStates = Arrays.copyOf(edgeStates, l + 1);
+                edgeCharCodes[l] = ch;
+                edgeStates[l] = state;
+            }
+            return state;
+        }
+    }
+
+    static private final PunctuatorState[] PUNCTUATORS = new PunctuatorState[0x80];
+
+    static
+    {
+        definePunctuator(".", Token.DOT);
+        definePunctuator("..", Token.DESCENDANTS);
+        definePunctuator("...", Token.ELLIPSIS);
+        definePunctuator(",", Token.COMMA);
+        definePunctuator(";", Token.SEMICOLON);
+        definePunctuator(":", Token.COLON);
+        definePunctuator("::", Token.COLON_COLON);
+        definePunctuator("(", Token.LPAREN);
+        definePunctuator(")", Token.RPAREN);
+        definePunctuator("[", Token.LBRACKET);
+        definePunctuator("]", Token.RBRACKET);
+        definePunctuator("{", Token.LBRACE);
+        definePunctuator("}", Token.RBRACE);
+        definePunctuator("@", Token.ATTRIBUTE);
+        definePunctuator("?", Token.QUESTION_MARK);
+        definePunctuator("!", Token.EXCLAMATION_MARK);
+        definePunctuator("!=", Token.NOT_EQUALS);
+        definePunctuator("!==", Token.STRICT_NOT_EQUALS);
+        definePunctuator("=", Token.ASSIGN);
+        definePunctuator("==", Token.EQUALS);
+        definePunctuator("===", Token.STRICT_EQUALS);
+        definePunctuator("+", Token.PLUS);
+        definePunctuator("++", Token.INCREMENT);
+        definePunctuator("+=", Token.ADD_ASSIGN);
+        definePunctuator("-", Token.MINUS);
+        definePunctuator("--", Token.DECREMENT);
+        definePunctuator("-=", Token.SUBTRACT_ASSIGN);
+        definePunctuator("*", Token.TIMES);
+        definePunctuator("*=", Token.MULTIPLY_ASSIGN);
+        definePunctuator("/", Token.SLASH);
+        definePunctuator("/=", Token.DIVIDE_ASSIGN);
+        definePunctuator("%", Token.REMAINDER);
+        definePunctuator("%=", Token.REMAINDER_ASSIGN);
+        definePunctuator("&", Token.BIT_AND);
+        definePunctuator("&=", Token.BIT_AND_ASSIGN);
+        definePunctuator("&&", Token.LOGICAL_AND);
+        definePunctuator("&&=", Token.LOGICAL_AND_ASSIGN);
+        definePunctuator("^", Token.BIT_XOR);
+        definePunctuator("^=", Token.BIT_XOR_ASSIGN);
+        definePunctuator("^^=", Token.LOGICAL_XOR_ASSIGN);
+        definePunctuator("|", Token.BIT_OR);
+        definePunctuator("|=", Token.BIT_OR_ASSIGN);
+        definePunctuator("||", Token.LOGICAL_OR);
+        definePunctuator("||=", Token.LOGICAL_OR_ASSIGN);
+        definePunctuator("~", Token.BIT_NOT);
+        definePunctuator("<", Token.LT);
+        definePunctuator("<=", Token.LE);
+        definePunctuator("<<", Token.LEFT_SHIFT);
+        definePunctuator("<<=", Token.LSHIFT_ASSIGN);
+        definePunctuator(">", Token.GT);
+        definePunctuator(">=", Token.GE);
+        definePunctuator(">>", Token.RIGHT_SHIFT);
+        definePunctuator(">>=", Token.RSHIFT_ASSIGN);
+        definePunctuator(">>>", Token.UNSIGNED_RIGHT_SHIFT);
+        definePunctuator(">>>=", Token.UNSIGNED_RSHIFT_ASSIGN);
+    }
+
+    static private void definePunctuator(String str, Token type)
+    {
+        int ch = str.charAt(0);
+        var state = PUNCTUATORS[ch];
+        if (state == null)
+        {
+            state = PUNCTUATORS[ch] = new PunctuatorState();
+        }
+        for (int i = 1; i != str.length(); ++i)
+        {
+            state = state.nextOrCreate(str.charAt(i));
+        }
+        state.type = type;
+    }
+
     static private final String NEWLINE = Character.toString((char) 0x0a);
     static private final String CARRIAGE_RETURN = Character.toString((char) 0x0d);
     static private final String VERTICAL_TAB = Character.toString((char) 0x0b);
@@ -65,9 +254,16 @@ public final class Lexer
     static private final String NULL_ESCAPE_VALUE = Character.toString((char) 0);
 
     public Lexer(Script script)
+    {
+        this(script, script.sourceText().input());
+    }
+
+    public Lexer(Script script, LexerInput input)
     {
         _script = script;
-        _charCodes = script.source().codePoints().toArray();
+        _input = input;
+        lineStartOffsets.push(0);
+        lineStartOffsets.push(0);
     }
 
     private static String stringifyCharCode(int charCode)
@@ -80,36 +276,119 @@ public final class Lexer
         return _script;
     }
 
+    /**
+     * Records shifted tokens so that, after the parser rewinds, they are
+     * replayed instead of lexed again. Must be called before the first
+     * <code>shift()</code>.
+     */
+    public void enableTokenBuffer()
+    {
+        if (_tokenBuffer == null)
+        {
+            _tokenBuffer = new TokenBuffer();
+        }
+    }
+
+    /*
+     * Moves the lexer to another position of its input, as when a region of
+     * an edited script is parsed again. Buffered tokens are discarded. Input
+     * offsets are taken from the script's line starts, so the input must use
+     * code units.
+     */
+    void reset(int index, int line)
+    {
+        this.index = index;
+        this.offset = _script.getCodeUnitOffset(index);
+        this.line = line;
+        this.mode = Lexer.Mode.NORMAL;
+        this.rescan = RESCAN_NONE;
+        this.tokenIndex = 0;
+        if (_tokenBuffer != null)
+        {
+            _tokenBuffer.truncate(0);
+        }
+        lineStartOffsets.setLength(0);
+        for (int i = 0; i != _script.lineStarts.length(); ++i)
+        {
+            lineStartOffsets.push(_script.getLineStartCodeUnits(i));
+        }
+    }
+
+    boolean inputUsesCodeUnits()
+    {
+        return _input.unitsAreCodeUnits();
+    }
+
+    public boolean tokenBufferEnabled()
+    {
+        return _tokenBuffer != null;
+    }
+
     public int getLineIndentation(int lineNum)
     {
-        int lineStart = _script.getLineStart(lineNum);
-        int i = lineStart;
-        while (i != _charCodes.length && SxcSourceCharacter.isWhiteSpace(_charCodes[i]))
+        int offset = lineStartOffsets.get(lineNum);
+        int i = 0;
+        while (offset != _input.length() && SxcSourceCharacter.isWhiteSpace(_input.codePointAt(offset)))
         {
+            offset = _input.nextOffset(offset);
             ++i;
         }
-        return i - lineStart;
+        return i;
     }
 
     public boolean hasRemaining()
     {
-        return _charCodes.length != index;
+        return _input.length() != offset;
     }
 
     public int shiftCharCode()
     {
-        return _charCodes[index++];
+        int ch = _input.unitAt(offset);
+        if (ch < 0x80)
+        {
+            ++offset;
+        }
+        else
+        {
+            ch = _input.codePointAt(offset);
+            offset = _input.nextOffset(offset);
+            if (ch >= 0x10000)
+            {
+                _script.addSupplementaryIndex(index);
+            }
+        }
+        ++index;
+        return ch;
     }
 
     public int lookahead(int index)
     {
-        var index2 = this.index + index;
-        return index2 < _charCodes.length ? _charCodes[index2] : 0;
+        int offset = this.offset;
+        int length = _input.length();
+        for (; index != 0 && offset < length; --index)
+        {
+            offset = _input.unitAt(offset) < 0x80 ? offset + 1 : _input.nextOffset(offset);
+        }
+        if (offset >= length)
+        {
+            return 0;
+        }
+        int ch = _input.unitAt(offset);
+        return ch < 0x80 ? ch : _input.codePointAt(offset);
+    }
+
+    /*
+     * Advances over <code>length</code> code points known to be ASCII.
+     */
+    private void skip(int length)
+    {
+        index += length;
+        offset += length;
     }
 
     public void beginSlice()
     {
-        _sliceStart = index;
+        _sliceStart = offset;
     }
 
     public String endSlice()
@@ -118,18 +397,14 @@ public final class Lexer
         {
             return "";
         }
-        return new String(_charCodes, _sliceStart, index - _sliceStart);
+        return _input.slice(_sliceStart, offset);
     }
 
     public boolean matchingArray(int[] charCodes)
     {
-        if ((index + charCodes.length) >= this._charCodes.length)
-        {
-            return false;
-        }
         for (int i = 0; i != charCodes.length; ++i)
         {
-            if (this._charCodes[index + i] != charCodes[i])
+            if (lookahead(i) != charCodes[i])
             {
                 return false;
             }
@@ -164,6 +439,7 @@ public final class Lexer
     private void beginToken()
     {
         token.start = index;
+        token.startOffset = offset;
         token.firstLine = line;
     }
 
@@ -176,11 +452,42 @@ public final class Lexer
 
     private void endFixedToken(Token type, int length)
     {
-        index += length;
+        skip(length);
         endToken(type);
     }
 
     public void shift()
+    {
+        if (_tokenBuffer == null)
+        {
+            scan();
+            return;
+        }
+        var buffer = _tokenBuffer;
+        if (tokenIndex < buffer.length() && buffer.mode(tokenIndex) == mode && buffer.rescan(tokenIndex) == rescan)
+        {
+            buffer.replay(tokenIndex, token, this);
+            index = token.end;
+            offset = buffer.endOffset(tokenIndex);
+            line = token.lastLine;
+        }
+        else
+        {
+            buffer.truncate(tokenIndex);
+            int numLineStarts = _script.lineStarts.length();
+            int numComments = _script.comments.size();
+            int numProblems = _script.problems.size();
+            scan();
+            if (tokenIndex == buffer.length())
+            {
+                buffer.add(token, mode, rescan, offset, _script, lineStartOffsets, numLineStarts, numComments, numProblems);
+            }
+        }
+        ++tokenIndex;
+        rescan = RESCAN_NONE;
+    }
+
+    private void scan()
     {
         if (mode == Lexer.Mode.NORMAL)
         {
@@ -200,6 +507,7 @@ public final class Lexer
     {
         int ch = 0;
         index = token.start + 1;
+        offset = token.startOffset + 1;
         beginSlice();
         for (;;)
         {
@@ -268,6 +576,7 @@ public final class Lexer
         endToken(Token.REG_EXP_LITERAL);
         token.stringValue = body;
         token.regExpFlags = flags;
+        rescan = RESCAN_REG_EXP;
     }
 
     private void normalScan()
@@ -278,7 +587,14 @@ public final class Lexer
             ch = lookahead(0);
             if (SxcSourceCharacter.isWhiteSpace(ch))
             {
-                shiftCharCode();
+                if (ch < 0x80)
+                {
+                    skip(_input.skipSpaces(offset) - offset);
+                }
+                else
+                {
+                    shiftCharCode();
+                }
             }
             else if (!scanLineTerminator(ch) && !scanComment())
             {
@@ -306,13 +622,12 @@ public final class Lexer
                 }
                 else
                 {
-                    var idString = endSlice();
-                    var keyword = filterKeyword(idString);
+                    var keyword = filterKeyword(_sliceStart, offset);
 
                     if (keyword == null)
                     {
                         endToken(Token.IDENTIFIER);
-                        token.stringValue = idString;
+                        token.stringValue = _script.nameTable().intern(_input, _sliceStart, offset);
                     }
                     else
                     {
@@ -327,248 +642,22 @@ public final class Lexer
         {
             scanNumericLiteral(ch, false);
         }
+        else if (ch == 0x2e && SxcSourceCharacter.isDecimalDigit(lookahead(1)))
+        {
+            scanNumericLiteral(0, true);
+        }
+        else if (ch < 0x80 && PUNCTUATORS[ch] != null)
+        {
+            scanPunctuator(PUNCTUATORS[ch]);
+        }
         else
         {
-            if (matchingArray(UNSIGNED_RSHIFT_ASSIGN))
-            {
-                endFixedToken(Token.UNSIGNED_RSHIFT_ASSIGN, 4);
-                return;
-            }
-
-            if (matchingArray(ELLIPSIS))
-            {
-                endFixedToken(Token.ELLIPSIS, 3);
-                return;
-            }
-            if (matchingArray(LOGICAL_AND_ASSIGN))
-            {
-                endFixedToken(Token.LOGICAL_AND_ASSIGN, 3);
-                return;
-            }
-            if (matchingArray(LOGICAL_XOR_ASSIGN))
-            {
-                endFixedToken(Token.LOGICAL_XOR_ASSIGN, 3);
-                return;
-            }
-            if (matchingArray(LOGICAL_OR_ASSIGN))
-            {
-                endFixedToken(Token.LOGICAL_OR_ASSIGN, 3);
-                return;
-            }
-            if (matchingArray(UNSIGNED_RIGHT_SHIFT))
-            {
-                endFixedToken(Token.UNSIGNED_RIGHT_SHIFT, 3);
-                return;
-            }
-            if (matchingArray(EQUALS_3))
-            {
-                endFixedToken(Token.STRICT_EQUALS, 3);
-                return;
-            }
-            if (matchingArray(NOT_EQUALS_3))
-            {
-                endFixedToken(Token.STRICT_NOT_EQUALS, 3);
-                return;
-            }
-            if (matchingArray(LSHIFT_ASSIGN))
-            {
-                endFixedToken(Token.LSHIFT_ASSIGN, 3);
-                return;
-            }
-            if (matchingArray(RSHIFT_ASSIGN))
-            {
-                endFixedToken(Token.RSHIFT_ASSIGN, 3);
-                return;
-            }
-            if (matchingArray(DESCENDANTS))
-            {
-                endFixedToken(Token.DESCENDANTS, 2);
-                return;
-            }
-            if (matchingArray(COLON_COLON))
-            {
-                endFixedToken(Token.COLON_COLON, 2);
-                return;
-            }
-            if (matchingArray(INCREMENT))
-            {
-                endFixedToken(Token.INCREMENT, 2);
-                return;
-            }
-            if (matchingArray(DECREMENT))
-            {
-                endFixedToken(Token.DECREMENT, 2);
-                return;
-            }
-            if (matchingArray(LEFT_SHIFT))
-            {
-                endFixedToken(Token.LEFT_SHIFT, 2);
-                return;
-            }
-            if (matchingArray(RIGHT_SHIFT))
-            {
-                endFixedToken(Token.RIGHT_SHIFT, 2);
-                return;
-            }
-            if (matchingArray(EQUALS))
-            {
-                endFixedToken(Token.EQUALS, 2);
-                return;
-            }
-            if (matchingArray(NOT_EQUALS))
-            {
-                endFixedToken(Token.NOT_EQUALS, 2);
-                return;
-            }
-            if (matchingArray(LE))
-            {
-                endFixedToken(Token.LE, 2);
-                return;
-            }
-            if (matchingArray(GE))
-            {
-                endFixedToken(Token.GE, 2);
-                return;
-            }
-            if (matchingArray(LOGICAL_AND))
-            {
-                endFixedToken(Token.LOGICAL_AND, 2);
-                return;
-            }
-            if (matchingArray(LOGICAL_OR))
-            {
-                endFixedToken(Token.LOGICAL_OR, 2);
-                return;
-            }
-            if (matchingArray(ADD_ASSIGN))
-            {
-                endFixedToken(Token.ADD_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(SUBTRACT_ASSIGN))
-            {
-                endFixedToken(Token.SUBTRACT_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(MULTIPLY_ASSIGN))
-            {
-                endFixedToken(Token.MULTIPLY_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(DIVIDE_ASSIGN))
-            {
-                endFixedToken(Token.DIVIDE_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(REMAINDER_ASSIGN))
-            {
-                endFixedToken(Token.REMAINDER_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(BIT_AND_ASSIGN))
-            {
-                endFixedToken(Token.BIT_AND_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(BIT_XOR_ASSIGN))
-            {
-                endFixedToken(Token.BIT_XOR_ASSIGN, 2);
-                return;
-            }
-            if (matchingArray(BIT_OR_ASSIGN))
-            {
-                endFixedToken(Token.BIT_OR_ASSIGN, 2);
-                return;
-            }
-
             switch (ch)
             {
-                case 0x2e:
-                {
-                    if (SxcSourceCharacter.isDecimalDigit(lookahead(1)))
-                    {
-                        scanNumericLiteral(0, true);
-                        return;
-                    }
-                    endFixedToken(Token.DOT, 1);
-                    return;
-                }
-                case 0x2c:
-                    endFixedToken(Token.COMMA, 1);
-                    return;
-                case 0x3d:
-                    endFixedToken(Token.ASSIGN, 1);
-                    return;
-                case 0x3a:
-                    endFixedToken(Token.COLON, 1);
-                    return;
-                case 0x3b:
-                    endFixedToken(Token.SEMICOLON, 1);
-                    return;
-                case 0x28:
-                    endFixedToken(Token.LPAREN, 1);
-                    return;
-                case 0x29:
-                    endFixedToken(Token.RPAREN, 1);
-                    return;
-                case 0x5B:
-                    endFixedToken(Token.LBRACKET, 1);
-                    return;
-                case 0x5D:
-                    endFixedToken(Token.RBRACKET, 1);
-                    return;
-                case 0x7B:
-                    endFixedToken(Token.LBRACE, 1);
-                    return;
-                case 0x7D:
-                    endFixedToken(Token.RBRACE, 1);
-                    return;
                 case 0x22:
                 case 0x27:
                     scanStringLiteral(ch);
                     return;
-                case 0x40:
-                    endFixedToken(Token.ATTRIBUTE, 1);
-                    return;
-                case 0x3f:
-                    endFixedToken(Token.QUESTION_MARK, 1);
-                    return;
-                case 0x21:
-                    endFixedToken(Token.EXCLAMATION_MARK, 1);
-                    return;
-                case 0x2b:
-                    endFixedToken(Token.PLUS, 1);
-                    return;
-                case 0x2d:
-                    endFixedToken(Token.MINUS, 1);
-                    return;
-                case 0x2a:
-                    endFixedToken(Token.TIMES, 1);
-                    return;
-                case 0x2f:
-                    endFixedToken(Token.SLASH, 1);
-                    return;
-                case 0x25:
-                    endFixedToken(Token.REMAINDER, 1);
-                    return;
-                case 0x26:
-                    endFixedToken(Token.BIT_AND, 1);
-                    return;
-                case 0x5e:
-                    endFixedToken(Token.BIT_XOR, 1);
-                    return;
-                case 0x7c:
-                    endFixedToken(Token.BIT_OR, 1);
-                    return;
-                case 0x7e:
-                    endFixedToken(Token.BIT_NOT, 1);
-                    return;
-                case 0x3c:
-                    endFixedToken(Token.LT, 1);
-                    return;
-                case 0x3e:
-                    endFixedToken(Token.GT, 1);
-                    return;
                 // escape identifier
                 case 0x5c:
                 {
@@ -604,6 +693,26 @@ public final class Lexer
         }
     }
 
+    private void scanPunctuator(PunctuatorState state)
+    {
+        var type = state.type;
+        int length = 1;
+        for (int i = 1;; ++i)
+        {
+            state = state.next(lookahead(i));
+            if (state == null)
+            {
+                break;
+            }
+            if (state.type != null)
+            {
+                type = state.type;
+                length = i + 1;
+            }
+        }
+        endFixedToken(type, length);
+    }
+
     private boolean scanLineTerminator(int ch)
     {
         if (SxcSourceCharacter.isLineTerminator(ch))
@@ -614,12 +723,30 @@ public final class Lexer
             }
             shiftCharCode();
             ++line;
-            _script.lineStarts.push(index);
+            addLineStart(index, offset);
             return true;
         }
         return false;
     }
 
+    /*
+     * Line starts and comments already recorded are not recorded again, as
+     * when a function body skipped by a lazy parse is lexed once more.
+     */
+    void addLineStart(int index, int offset)
+    {
+        if (index > _script.lineStarts.last())
+        {
+            _script.addLineStart(index);
+            lineStartOffsets.push(offset);
+        }
+    }
+
+    void addComment(Ast.CommentNode node)
+    {
+        _script.addComment(node);
+    }
+
     private boolean scanComment()
     {
         if (lookahead(0) != 0x2f)
@@ -631,9 +758,10 @@ public final class Lexer
 
         if (ch == 0x2a)
         {
-            var span = getCharacterPointer();
-            index += 2;
-            var builder = new StringBuilder();
+            int firstLine = line;
+            int start = index;
+            skip(2);
+            var builder = _script.recordsComments() ? new StringBuilder() : null;
             int nested_sections = 1;
             beginSlice();
 
@@ -644,77 +772,121 @@ public final class Lexer
                 {
                     if ((--nested_sections) != 0)
                     {
-                        index += 2;
+                        skip(2);
                     }
                     else
                     {
-                        builder.append(endSlice());
-                        index += 2;
+                        if (builder != null)
+                        {
+                            builder.append(endSlice());
+                        }
+                        skip(2);
                         break;
                     }
                 }
                 else if (ch == 0x2f && lookahead(1) == 0x2a)
                 {
                     ++nested_sections;
-                    index += 2;
+                    skip(2);
                 }
                 else if (SxcSourceCharacter.isLineTerminator(ch))
                 {
-                    builder.append(endSlice());
+                    if (builder != null)
+                    {
+                        builder.append(endSlice());
+                    }
                     scanLineTerminator(ch);
-                    builder.append(ch == 0x0d ? "\n" : stringifyCharCode(ch));
+                    if (builder != null)
+                    {
+                        builder.append(ch == 0x0d ? "\n" : stringifyCharCode(ch));
+                    }
                     beginSlice();
                 }
-                else if (hasRemaining())
+                else if (!hasRemaining())
                 {
-                    shiftCharCode();
+                    throw reportUnexpectedCharacter();
+                }
+                else if (ch < 0x80)
+                {
+                    skip(_input.skipCommentText(offset + 1, true) - offset);
                 }
                 else
                 {
-                    throw reportUnexpectedCharacter();
+                    shiftCharCode();
                 }
             }
 
-            var node = new Ast.CommentNode(builder.toString(), true);
-            node.span = new Span(span.firstLine(), span.start(), line, index);
-            _script.comments.add(node);
+            if (builder != null)
+            {
+                var node = new Ast.CommentNode(builder.toString(), true);
+                node.setSpan(firstLine, start, line, index);
+                addComment(node);
+            }
             return true;
         }
 
         if (ch == 0x2f)
         {
             var start = index;
-            index += 2;
+            skip(2);
             beginSlice();
 
-            while (hasRemaining() && !SxcSourceCharacter.isLineTerminator(lookahead(0)))
+            while (hasRemaining() && !SxcSourceCharacter.isLineTerminator(ch = lookahead(0)))
             {
-                shiftCharCode();
+                if (ch < 0x80)
+                {
+                    skip(_input.skipCommentText(offset + 1, false) - offset);
+                }
+                else
+                {
+                    shiftCharCode();
+                }
             }
 
-            var content = endSlice();
-            var node = new Ast.CommentNode(content, false);
-            node.span = new Span(line, start, line, index);
-            _script.comments.add(node);
+            if (_script.recordsComments())
+            {
+                var node = new Ast.CommentNode(endSlice(), false);
+                node.setSpan(line, start, line, index);
+                addComment(node);
+            }
             return true;
         }
 
         return false;
     }
 
+    /*
+     * Digits are accumulated into a long significand while scanning, with a
+     * decimal exponent counting the fraction digits and the integer digits
+     * that do not fit. Integers that fit in a long are exact; other forms go
+     * through a single correctly rounded operation when both the significand
+     * and the power of ten are exact doubles, and through
+     * <code>Double.parseDouble()</code> otherwise.
+     */
     private void scanNumericLiteral(int ch, boolean onDot)
     {
         beginSlice();
         shiftCharCode();
 
-        boolean prependDot = onDot;
-        boolean appendDot = false;
-        boolean appendZero = false;
+        long significand = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        boolean integral = !onDot;
 
         if (onDot)
         {
             do
             {
+                int digit = lookahead(0) - 0x30;
+                if (significand < SIGNIFICAND_LIMIT || significand == SIGNIFICAND_LIMIT && digit <= 7)
+                {
+                    significand = significand * 10 + digit;
+                    --exponent;
+                }
+                else
+                {
+                    truncated |= digit != 0;
+                }
                 shiftCharCode();
             }
             while (SxcSourceCharacter.isDecimalDigit(lookahead(0)));
@@ -732,22 +904,39 @@ public final class Lexer
             }
             else
             {
-                while (SxcSourceCharacter.isDecimalDigit(lookahead(0)))
+                significand = ch - 0x30;
+                while (SxcSourceCharacter.isDecimalDigit(ch = lookahead(0)))
                 {
+                    int digit = ch - 0x30;
+                    if (significand < SIGNIFICAND_LIMIT || significand == SIGNIFICAND_LIMIT && digit <= 7)
+                    {
+                        significand = significand * 10 + digit;
+                    }
+                    else
+                    {
+                        truncated |= digit != 0;
+                        ++exponent;
+                    }
                     shiftCharCode();
                 }
             }
 
-            appendDot = true;
-
             if (lookahead(0) == 0x2e)
             {
-                appendDot = false;
-                appendZero = true;
+                integral = false;
                 shiftCharCode();
-                while (SxcSourceCharacter.isDecimalDigit(lookahead(0)))
+                while (SxcSourceCharacter.isDecimalDigit(ch = lookahead(0)))
                 {
-                    appendZero = false;
+                    int digit = ch - 0x30;
+                    if (significand < SIGNIFICAND_LIMIT || significand == SIGNIFICAND_LIMIT && digit <= 7)
+                    {
+                        significand = significand * 10 + digit;
+                        --exponent;
+                    }
+                    else
+                    {
+                        truncated |= digit != 0;
+                    }
                     shiftCharCode();
                 }
             }
@@ -757,10 +946,10 @@ public final class Lexer
 
         if (ch == 0x65 || ch == 0x45)
         {
-            appendDot = false;
-            appendZero = false;
+            integral = false;
             shiftCharCode();
             ch = lookahead(0);
+            boolean negative = ch == 0x2d;
             if (ch == 0x2b || ch == 0x2d)
             {
                 shiftCharCode();
@@ -769,28 +958,61 @@ public final class Lexer
             {
                 throw reportUnexpectedCharacter();
             }
-            while (SxcSourceCharacter.isDecimalDigit(lookahead(0)))
+            int exponent2 = 0;
+            while (SxcSourceCharacter.isDecimalDigit(ch = lookahead(0)))
             {
+                // saturated; such exponents take the slow path anyway
+                exponent2 = Math.min(exponent2 * 10 + ch - 0x30, 100000);
                 shiftCharCode();
             }
+            exponent += negative ? -exponent2 : exponent2;
         }
 
         endToken(Token.NUMERIC_LITERAL);
-        token.numberValue = Double.parseDouble((prependDot ? "0." : "") + endSlice() + (appendDot ? ".0" : appendZero ? "0" : ""));
+        if (integral && exponent == 0)
+        {
+            token.numberValue = significand;
+            token.longValue = significand;
+            token.isIntegral = true;
+            return;
+        }
+        token.longValue = 0;
+        token.isIntegral = false;
+        if (!truncated && significand <= EXACT_SIGNIFICAND_LIMIT && exponent >= -22 && exponent <= 22)
+        {
+            token.numberValue = exponent < 0 ? significand / POWERS_OF_TEN[-exponent] : significand * POWERS_OF_TEN[exponent];
+        }
+        else
+        {
+            token.numberValue = Double.parseDouble(endSlice());
+        }
     }
 
     private void scanHexLiteral()
     {
         shiftCharCode();
-        var value = scanHexDigit();
+        long value = scanHexDigit();
+        boolean overflow = false;
         int digit = -1;
         while ((digit = SxcSourceCharacter.measureHexDigit(lookahead(0))) != -1)
         {
+            overflow |= (value >>> 59) != 0;
             value = (value << 4) | digit;
             shiftCharCode();
         }
         endToken(Token.NUMERIC_LITERAL);
-        token.numberValue = value;
+        if (overflow)
+        {
+            token.numberValue = new BigInteger(endSlice().substring(2), 16).doubleValue();
+            token.longValue = 0;
+            token.isIntegral = false;
+        }
+        else
+        {
+            token.numberValue = value;
+            token.longValue = value;
+            token.isIntegral = true;
+        }
     }
 
     private void scanStringLiteral(int delim)
@@ -833,19 +1055,15 @@ public final class Lexer
             }
         }
 
-        var str = endSlice();
-        if (builder != null)
-        {
-            builder.append(str);
-        }
+        var str = builder == null ? _script.nameTable().intern(_input, _sliceStart, offset) : builder.append(endSlice()).toString();
         shiftCharCode();
         endToken(Token.STRING_LITERAL);
-        token.stringValue = builder == null ? str : builder.toString();
+        token.stringValue = str;
     }
 
     private void scanTripleStringLiteral(int delim)
     {
-        index += 2;
+        skip(2);
         var lines = new Vector<String>();
         var builder = new StringBuilder();
         scanLineTerminator(lookahead(0));
@@ -884,7 +1102,7 @@ public final class Lexer
 
         builder.append(endSlice());
         lines.add(builder.toString());
-        index += 3;
+        skip(3);
         endToken(Token.STRING_LITERAL);
         token.stringValue = joinTripleStringLiteralLines(lines);
     }
@@ -964,77 +1182,35 @@ public final class Lexer
 
         builder.append(endSlice());
         endToken(Token.IDENTIFIER);
-        token.stringValue = builder.toString();
+        token.stringValue = _script.nameTable().intern(builder.toString());
     }
 
-    private Token filterKeyword(String str)
+    private Token filterKeyword(int start, int end)
     {
-        switch (str.length())
+        int length = end - start;
+        if (length < 2 || length > MAX_KEYWORD_LENGTH)
         {
-            case 1:
-                return null;
-            case 2:
-                return  str.equals("as") ? Token.AS :
-                        str.equals("do") ? Token.DO :
-                        str.equals("if") ? Token.IF :
-                        str.equals("in") ? Token.IN :
-                        str.equals("is") ? Token.IS : null;
-            case 3:
-                return  str.equals("for") ? Token.FOR :
-                        str.equals("new") ? Token.NEW :
-                        str.equals("try") ? Token.TRY :
-                        str.equals("use") ? Token.USE :
-                        str.equals("var") ? Token.VAR : null;
-            case 4:
-                if (str.equals("true"))
-                {
-                    token.booleanValue = true;
-                    return Token.BOOLEAN_LITERAL;
-                }
-                return  str.equals("case") ? Token.CASE :
-                        str.equals("else") ? Token.ELSE :
-                        str.equals("null") ? Token.NULL_LITERAL :
-                        str.equals("this") ? Token.THIS_LITERAL :
-                        str.equals("void") ? Token.VOID :
-                        str.equals("with") ? Token.WITH : null;
-            case 5:
-                if (str.equals("false"))
-                {
-                    this.token.booleanValue = false;
-                    return Token.BOOLEAN_LITERAL;
-                }
-                return  str.equals("break") ? Token.BREAK :
-                        str.equals("catch") ? Token.CATCH :
-                        str.equals("class") ? Token.CLASS :
-                        str.equals("const") ? Token.CONST :
-                        str.equals("super") ? Token.SUPER :
-                        str.equals("throw") ? Token.THROW :
-                        str.equals("while") ? Token.WHILE :
-                        str.equals("yield") ? Token.YIELD : null;
-            case 6:
-                return  str.equals("delete") ? Token.DELETE :
-                        str.equals("import") ? Token.IMPORT :
-                        str.equals("public") ? Token.PUBLIC :
-                        str.equals("return") ? Token.RETURN :
-                        str.equals("switch") ? Token.SWITCH :
-                        str.equals("typeof") ? Token.TYPEOF : null;
-            case 7:
-                return  str.equals("default") ? Token.DEFAULT :
-                        str.equals("finally") ? Token.FINALLY :
-                        str.equals("package") ? Token.PACKAGE :
-                        str.equals("private") ? Token.PRIVATE : null;
-            case 8:
-                return  str.equals("continue") ? Token.CONTINUE :
-                        str.equals("function") ? Token.FUNCTION :
-                        str.equals("internal") ? Token.INTERNAL : null;
-            case 9:
-                return  str.equals("interface") ? Token.INTERFACE :
-                        str.equals("protected") ? Token.PROTECTED : null;
-            case 10:
-                return  str.equals("instanceof") ? Token.INSTANCEOF : null;
-            default:
+            return null;
+        }
+        int slot = hashKeyword(length, _input.unitAt(start), _input.unitAt(start + 1));
+        var name = KEYWORD_NAMES[slot];
+        if (name == null || name.length != length)
+        {
+            return null;
+        }
+        for (int i = 0; i != length; ++i)
+        {
+            if (_input.unitAt(start + i) != name[i])
+            {
                 return null;
+            }
+        }
+        var type = KEYWORD_TOKENS[slot];
+        if (type == Token.BOOLEAN_LITERAL)
+        {
+            token.booleanValue = length == 4;
         }
+        return type;
     }
 
     private String scanEscapeSequence()
@@ -1044,6 +1220,7 @@ public final class Lexer
         {
             throw reportUnexpectedCharacter();
         }
+        var chOffset = offset;
         var ch = shiftCharCode();
         switch (ch)
         {
@@ -1073,6 +1250,7 @@ public final class Lexer
                 return "\\";
         }
         --index;
+        offset = chOffset;
         if (scanLineTerminator(ch))
         {
             return "";
@@ -1278,24 +1456,26 @@ public final class Lexer
         if (matchingArray(XML_CDATA_START))
         {
             scanXMLCDATA();
-            return true;
         }
-        if (matchingArray(XML_COMMENT_START))
+        else if (matchingArray(XML_COMMENT_START))
         {
             scanXMLComment();
-            return true;
         }
-        if (lookahead(0) == 0x3f)
+        else if (lookahead(0) == 0x3f)
         {
             scanXMLPI();
-            return true;
         }
-        return false;
+        else
+        {
+            return false;
+        }
+        rescan = RESCAN_XML_MARKUP;
+        return true;
     }
 
     private void scanXMLCDATA()
     {
-        index += 8;
+        skip(8);
         beginSlice();
 
         for (;;)
@@ -1303,7 +1483,7 @@ public final class Lexer
             var ch = lookahead(0);
             if (ch == 0x5d && lookahead(1) == 0x5d && lookahead(2) == 0x3e)
             {
-                index += 3;
+                skip(3);
                 break;
             }
             else if (!scanLineTerminator(ch))
@@ -1321,14 +1501,14 @@ public final class Lexer
 
     private void scanXMLComment()
     {
-        index += 3;
+        skip(3);
         beginSlice();
         for (;;)
         {
             var ch = lookahead(0);
             if (ch == 0x2d && lookahead(1) == 0x2d && lookahead(2) == 0x3e)
             {
-                index += 3;
+                skip(3);
                 break;
             }
             else if (!scanLineTerminator(ch))
@@ -1353,7 +1533,7 @@ public final class Lexer
             var ch = lookahead(0);
             if (ch == 0x3f && lookahead(1) == 0x3e)
             {
-                index += 2;
+                skip(2);
                 break;
             }
             else if (!scanLineTerminator(ch))
@@ -0,0 +1,292 @@
+package com.recoyx.sxc.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Source text scanned by the <code>Lexer</code>. Positions are offsets in the
+ * input's own units (UTF-16 code units or UTF-8 bytes); code points are decoded
+ * only when a non-ASCII unit is met.
+ */
+public abstract class LexerInput
+{
+    static public LexerInput fromString(String source)
+    {
+        return new StringInput(source);
+    }
+
+    static public LexerInput fromUTF8(byte[] bytes)
+    {
+        return new UTF8Input(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Input over the remaining bytes of a buffer, which may be memory-mapped.
+     * The buffer's position and limit are not changed.
+     */
+    static public LexerInput fromUTF8(ByteBuffer bytes)
+    {
+        return new UTF8Input(bytes.slice());
+    }
+
+    /**
+     * Number of units in the input.
+     */
+    public abstract int length();
+
+    /**
+     * Raw unit at <code>offset</code>. Equals the code point for ASCII.
+     */
+    public abstract int unitAt(int offset);
+
+    /**
+     * Code point starting at <code>offset</code>.
+     */
+    public abstract int codePointAt(int offset);
+
+    /**
+     * Offset of the code point following the one at <code>offset</code>.
+     */
+    public abstract int nextOffset(int offset);
+
+    /**
+     * Decodes the units from <code>start</code> to <code>end</code>.
+     */
+    public abstract String slice(int start, int end);
+
+    /*
+     * Whether units are UTF-16 code units, so that offsets are those of the
+     * script's source string.
+     */
+    boolean unitsAreCodeUnits()
+    {
+        return false;
+    }
+
+    /*
+     * Offset of the first unit from <code>offset</code> on that is not an
+     * ASCII white space.
+     */
+    int skipSpaces(int offset)
+    {
+        int length = length();
+        while (offset != length && isSpace(unitAt(offset)))
+        {
+            ++offset;
+        }
+        return offset;
+    }
+
+    /*
+     * Offset of the first unit from <code>offset</code> on that is a line
+     * terminator, non-ASCII, or, in a block comment, <code>*</code> or
+     * <code>/</code>. The units skipped are ASCII, one code point each.
+     */
+    int skipCommentText(int offset, boolean block)
+    {
+        int length = length();
+        while (offset != length && !isCommentStop(unitAt(offset), block))
+        {
+            ++offset;
+        }
+        return offset;
+    }
+
+    static private boolean isSpace(int unit)
+    {
+        return unit == 0x20 || unit == 0x09 || unit == 0x0b || unit == 0x0c;
+    }
+
+    static private boolean isCommentStop(int unit, boolean block)
+    {
+        return unit >= 0x80 || unit == 0x0a || unit == 0x0d || (block && (unit == 0x2a || unit == 0x2f));
+    }
+
+    static private final class StringInput extends LexerInput
+    {
+        private String _source;
+
+        public StringInput(String source)
+        {
+            _source = source;
+        }
+
+        public int length()
+        {
+            return _source.length();
+        }
+
+        public int unitAt(int offset)
+        {
+            return _source.charAt(offset);
+        }
+
+        public int codePointAt(int offset)
+        {
+            char ch = _source.charAt(offset);
+            return Character.isHighSurrogate(ch) ? _source.codePointAt(offset) : ch;
+        }
+
+        public int nextOffset(int offset)
+        {
+            if (Character.isHighSurrogate(_source.charAt(offset++)) && offset != _source.length() && Character.isLowSurrogate(_source.charAt(offset)))
+            {
+                ++offset;
+            }
+            return offset;
+        }
+
+        public String slice(int start, int end)
+        {
+            return _source.substring(start, end);
+        }
+
+        boolean unitsAreCodeUnits()
+        {
+            return true;
+        }
+    }
+
+    /*
+     * UTF-8 input, read from a buffer with absolute indices. Spaces and
+     * comment text are skipped eight bytes at a time, read as a
+     * little-endian long so that the first byte found is the lowest one set
+     * in a mask.
+     */
+    static private final class UTF8Input extends LexerInput
+    {
+        static private final long ONES = 0x0101010101010101L;
+        static private final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+        static private final long HIGH_BITS = 0x8080808080808080L;
+
+        private ByteBuffer _bytes;
+        private int _length;
+
+        public UTF8Input(ByteBuffer bytes)
+        {
+            _bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+            _length = bytes.limit();
+        }
+
+        public int length()
+        {
+            return _length;
+        }
+
+        public int unitAt(int offset)
+        {
+            return _bytes.get(offset) & 0xff;
+        }
+
+        /*
+         * Malformed sequences decode to U+FFFD. nextOffset() moves past their
+         * lead byte and only the continuation bytes that follow it, so that
+         * a bad sequence does not take the characters after it.
+         */
+        public int codePointAt(int offset)
+        {
+            int lead = _bytes.get(offset) & 0xff;
+            if (lead < 0x80)
+            {
+                return lead;
+            }
+            int width = sequenceWidth(lead);
+            if (width == 1 || offset + width > _length)
+            {
+                return 0xfffd;
+            }
+            int ch = lead & (0xff >> (width + 1));
+            for (int i = 1; i != width; ++i)
+            {
+                int b = _bytes.get(offset + i) & 0xff;
+                if ((b & 0xc0) != 0x80)
+                {
+                    return 0xfffd;
+                }
+                ch = (ch << 6) | (b & 0x3f);
+            }
+            return ch;
+        }
+
+        public int nextOffset(int offset)
+        {
+            int end = Math.min(offset + sequenceWidth(_bytes.get(offset) & 0xff), _length);
+            int next = offset + 1;
+            while (next != end && (_bytes.get(next) & 0xc0) == 0x80)
+            {
+                ++next;
+            }
+            return next;
+        }
+
+        public String slice(int start, int end)
+        {
+            if (_bytes.hasArray())
+            {
+                return new String(_bytes.array(), _bytes.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+            }
+            var units = new byte[end - start];
+            _bytes.get(start, units);
+            return new String(units, StandardCharsets.UTF_8);
+        }
+
+        int skipSpaces(int offset)
+        {
+            var bytes = _bytes;
+            int length = _length;
+            for (;;)
+            {
+                for (; offset + 8 <= length; offset += 8)
+                {
+                    long spaces = bytes.getLong(offset) ^ (ONES * 0x20);
+                    if (spaces != 0)
+                    {
+                        offset += Long.numberOfTrailingZeros(spaces) >>> 3;
+                        break;
+                    }
+                }
+                if (offset == length || !isSpace(bytes.get(offset)))
+                {
+                    return offset;
+                }
+                ++offset;
+            }
+        }
+
+        int skipCommentText(int offset, boolean block)
+        {
+            var bytes = _bytes;
+            int length = _length;
+            for (; offset + 8 <= length; offset += 8)
+            {
+                long units = bytes.getLong(offset);
+                long stops = (units & HIGH_BITS) | matches(units, 0x0a) | matches(units, 0x0d);
+                if (block)
+                {
+                    stops |= matches(units, 0x2a) | matches(units, 0x2f);
+                }
+                if (stops != 0)
+                {
+                    return offset + (Long.numberOfTrailingZeros(stops) >>> 3);
+                }
+            }
+            return super.skipCommentText(offset, block);
+        }
+
+        /*
+         * High bit of every byte of <code>units</code> equal to
+         * <code>unit</code>, with no false positives.
+         */
+        static private long matches(long units, int unit)
+        {
+            long x = units ^ (ONES * unit);
+            return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+        }
+
+        static private int sequenceWidth(int lead)
+        {
+            return lead < 0xc0 ? 1 : lead < 0xe0 ? 2 : lead < 0xf0 ? 3 : lead < 0xf8 ? 4 : 1;
+        }
+    }
+}
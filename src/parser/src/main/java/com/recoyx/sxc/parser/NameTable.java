@@ -0,0 +1,199 @@
+package com.recoyx.sxc.parser;
+
+/**
+ * Table of canonical identifier and string literal instances. A table may be
+ * shared by every <code>Script</code> of a compilation, in which case equal
+ * names lexed from any of them are the same <code>String</code> object.
+ *
+ * The table is split into independently locked segments so that scripts
+ * parsed in parallel rarely contend for it.
+ */
+public final class NameTable
+{
+    static private final int SEGMENT_BITS = 4;
+
+    private Segment[] _segments = new Segment[1 << SEGMENT_BITS];
+
+    public NameTable()
+    {
+        for (int i = 0; i != _segments.length; ++i)
+        {
+            _segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Number of distinct names held.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (var segment : _segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public String intern(String str)
+    {
+        int hash = 0;
+        for (int i = 0; i != str.length(); ++i)
+        {
+            hash = hash * 31 + str.charAt(i);
+        }
+        return segmentFor(hash).intern(hash, str);
+    }
+
+    /**
+     * Returns the canonical instance for the input units from
+     * <code>start</code> to <code>end</code>, decoding them only if the
+     * name has not been seen before.
+     */
+    public String intern(LexerInput input, int start, int end)
+    {
+        int hash = 0;
+        for (int offset = start; offset != end;)
+        {
+            int ch = input.unitAt(offset);
+            if (ch < 0x80)
+            {
+                ++offset;
+            }
+            else
+            {
+                ch = input.codePointAt(offset);
+                offset = input.nextOffset(offset);
+            }
+            hash = ch < 0x10000 ? hash * 31 + ch : (hash * 31 + Character.highSurrogate(ch)) * 31 + Character.lowSurrogate(ch);
+        }
+        return segmentFor(hash).intern(hash, input, start, end);
+    }
+
+    /*
+     * Segments are chosen by the high bits of a multiplicative mix, which
+     * are independent of the low bits used for slots within a segment.
+     */
+    private Segment segmentFor(int hash)
+    {
+        return _segments[(hash * 0x9e3779b9) >>> (32 - SEGMENT_BITS)];
+    }
+
+    static private boolean matches(String entry, LexerInput input, int start, int end)
+    {
+        int i = 0;
+        for (int offset = start; offset != end; ++i)
+        {
+            if (i == entry.length())
+            {
+                return false;
+            }
+            int ch = input.unitAt(offset);
+            if (ch < 0x80)
+            {
+                ++offset;
+            }
+            else
+            {
+                ch = input.codePointAt(offset);
+                offset = input.nextOffset(offset);
+                if (ch >= 0x10000)
+                {
+                    if (entry.codePointAt(i) != ch)
+                    {
+                        return false;
+                    }
+                    ++i;
+                    continue;
+                }
+            }
+            if (entry.charAt(i) != ch)
+            {
+                return false;
+            }
+        }
+        return i == entry.length();
+    }
+
+    static private final class Segment
+    {
+        private String[] _entries = new String[64];
+        private int[] _hashes = new int[64];
+        private int _size = 0;
+
+        public synchronized int size()
+        {
+            return _size;
+        }
+
+        public synchronized String intern(int hash, String str)
+        {
+            int mask = _entries.length - 1;
+            for (int i = hash & mask;; i = (i + 1) & mask)
+            {
+                var entry = _entries[i];
+                if (entry == null)
+                {
+                    insert(i, hash, str);
+                    return str;
+                }
+                if (_hashes[i] == hash && entry.equals(str))
+                {
+                    return entry;
+                }
+            }
+        }
+
+        public synchronized String intern(int hash, LexerInput input, int start, int end)
+        {
+            int mask = _entries.length - 1;
+            for (int i = hash & mask;; i = (i + 1) & mask)
+            {
+                var entry = _entries[i];
+                if (entry == null)
+                {
+                    entry = input.slice(start, end);
+                    insert(i, hash, entry);
+                    return entry;
+                }
+                if (_hashes[i] == hash && matches(entry, input, start, end))
+                {
+                    return entry;
+                }
+            }
+        }
+
+        private void insert(int slot, int hash, String entry)
+        {
+            _entries[slot] = entry;
+            _hashes[slot] = hash;
+            if (++_size * 2 > _entries.length)
+            {
+                grow();
+            }
+        }
+
+        private void grow()
+        {
+            var entries = _entries;
+            var hashes = _hashes;
+            _entries = new String[entries.length << 1];
+            _hashes = new int[entries.length << 1];
+            int mask = _entries.length - 1;
+            for (int i = 0; i != entries.length; ++i)
+            {
+                if (entries[i] == null)
+                {
+                    continue;
+                }
+                int j = hashes[i] & mask;
+                while (_entries[j] != null)
+                {
+                    j = (j + 1) & mask;
+                }
+                _entries[j] = entries[i];
+                _hashes[j] = hashes[i];
+            }
+        }
+    }
+}
@@ -5,6 +5,12 @@ import java.util.HashMap;
 import java.util.Vector;
 import java.util.stream.IntStream;
 
+/**
+ * Parses a script into a program, collecting problems into the script.
+ * With lazy function bodies (see <code>setLazyFunctionBodies()</code>),
+ * syntax errors inside skipped bodies are deferred: a program whose script
+ * has no problems may still have invalid bodies, found once they are parsed.
+ */
 public final class Parser
 {
     static public final class State
@@ -14,6 +20,11 @@ public final class Parser
         */
         protected int index = 0;
 
+        /**
+        * @private
+        */
+        protected int offset = 0;
+
         /**
         * @private
         */
@@ -29,6 +40,16 @@ public final class Parser
         */
         protected Lexer.Mode lexerMode = Lexer.Mode.NORMAL;
 
+        /**
+        * @private
+        */
+        protected int tokenIndex = 0;
+
+        /**
+        * @private
+        */
+        protected int lexerRescan = Lexer.RESCAN_NONE;
+
         /**
         * @private
         */
@@ -155,6 +176,50 @@ public final class Parser
         _privateParser.setState(state);
     }
 
+    /**
+     * Number of times the parser has rewound to an earlier state, either
+     * during speculative parsing or through <code>setState()</code>.
+     */
+    public int numRewinds()
+    {
+        return _privateParser.numRewinds();
+    }
+
+    public boolean lazyFunctionBodies()
+    {
+        return _privateParser.lazyFunctionBodies;
+    }
+
+    /**
+     * Skips brace-delimited function bodies, which are then parsed when first
+     * requested through <code>Ast.FunctionCommonNode.body()</code>. Intended
+     * for sources of which only the declarations are needed.
+     *
+     * Syntax errors inside skipped bodies are not found by the parse of the
+     * program: <code>package { function f():void { var s = (1 + ; } }</code>
+     * gives a program and no problems. The errors are collected into the
+     * script when the body is parsed, and
+     * <code>Ast.FunctionCommonNode.bodyFailed()</code> indicates them.
+     */
+    public void setLazyFunctionBodies(boolean value)
+    {
+        _privateParser.lazyFunctionBodies = value;
+    }
+
+    public IncludeCache includeCache()
+    {
+        return _privateParser.includeCache;
+    }
+
+    /**
+     * Sets a cache from which include directives reuse sources already
+     * parsed, and to which they add the sources they parse.
+     */
+    public void setIncludeCache(IncludeCache cache)
+    {
+        _privateParser.includeCache = cache;
+    }
+
     public Ast.ProgramNode parseProgram()
     {
         _privateParser.clearState();
@@ -169,6 +234,32 @@ public final class Parser
         return script().invalidated() ? null : program;
     }
 
+    /**
+     * Parses this parser's script, the source of a program after an edit
+     * (see <code>TextEdit.applyTo()</code>), reusing the nodes of the program
+     * that the edit leaves intact. An edit inside the braces of a function
+     * body, or of a class, enum or package block, parses only the innermost
+     * such block; otherwise only the top-level packages and directives around
+     * the edit are parsed. Nodes after the parsed part keep their spans until
+     * they are moved by the edit, in one walk over those nodes. The result
+     * takes over the nodes of the program, which must not be used afterwards.
+     *
+     * The whole script is parsed instead if the program had problems, include
+     * directives or skipped function bodies, or if the edit changes where
+     * the parsed block or region ends.
+     */
+    public Ast.ProgramNode reparse(Ast.ProgramNode program, TextEdit edit)
+    {
+        var result = new Reparser(_privateParser, program, edit).reparse();
+        if (result != null)
+        {
+            return result;
+        }
+        script().clearRecords();
+        _privateParser.restart(0, 1);
+        return parseProgram();
+    }
+
     public Ast.ExpressionNode parseTypeAnnotation()
     {
         _privateParser.clearState();
@@ -695,6 +695,13 @@ public final class Problem extends RuntimeException
         }
     }
 
+    /**
+     * Whether problems capture a stack trace. Off by default, since the parser
+     * throws problems for error recovery; enable it to debug the compiler.
+     * Initialized from the <code>sxc.problemStackTraces</code> system property.
+     */
+    static public boolean fullStackTraces = Boolean.getBoolean("sxc.problemStackTraces");
+
     private String _type;
     private Problem.Constants _errorId;
     private Span _span;
@@ -703,7 +710,7 @@ public final class Problem extends RuntimeException
 
     public Problem(String type, Problem.Constants errorId, Span span, Script script, Problem.Argument... rest)
     {
-        super();
+        super(null, null, false, fullStackTraces);
         _type = type;
         _errorId = errorId;
         _span = span;
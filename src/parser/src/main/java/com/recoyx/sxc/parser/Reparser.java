@@ -0,0 +1,408 @@
+package com.recoyx.sxc.parser;
+
+import java.util.Vector;
+
+/**
+ * Incremental parse of an edited script for <code>Parser.reparse()</code>.
+ *
+ * An edit strictly inside the braces of a function body, or of the block of
+ * a class, enum or package, parses again only the innermost such block
+ * holding it. Otherwise the region parsed again starts after the second
+ * top-level item before the edit, so that the item whose parse may look at
+ * the first edited token is parsed again too, and ends at the first item
+ * starting after the edit. Nodes before the parsed block or region are kept
+ * as they are; nodes after it are kept and moved by the edit, and nodes
+ * around it have their ends moved.
+ */
+final class Reparser
+{
+    private UnderlyingParser _parser;
+    private Ast.ProgramNode _program;
+    private TextEdit _edit;
+
+    public Reparser(UnderlyingParser parser, Ast.ProgramNode program, TextEdit edit)
+    {
+        _parser = parser;
+        _program = program;
+        _edit = edit;
+    }
+
+    /**
+     * Returns the program of the edited script, or null if it has to be
+     * parsed in full.
+     */
+    public Ast.ProgramNode reparse()
+    {
+        var script2 = _program.script;
+        if (script2.problems.size() != 0 || script2.subscripts != null || script2.skippedFunctionBodies() || !_parser.lexer.inputUsesCodeUnits())
+        {
+            return null;
+        }
+        var finder = new BlockFinder(_edit);
+        finder.find(_program);
+        if (finder.block != null)
+        {
+            var program = reparseBlock(finder);
+            if (program != null)
+            {
+                return program;
+            }
+        }
+        return reparseItems();
+    }
+
+    private Ast.ProgramNode reparseBlock(BlockFinder finder)
+    {
+        var script = _parser.script;
+        var script2 = _program.script;
+        var block = finder.block;
+        int indexDelta = _edit.indexDelta();
+
+        // the brace may start a line, which the lexer does not record again
+        script.clearRecords();
+        script.copyPositions(script2, 0, block.start() + 1, 0, 0);
+        for (var comment : script2.comments)
+        {
+            if (comment.start() >= block.start())
+            {
+                break;
+            }
+            script.addComment(comment);
+        }
+        _parser.restart(block.start(), block.firstLine());
+        var block2 = _parser.parseBlockRegion(finder.owner, finder.atConstructor, block.end() + indexDelta);
+        if (block2 == null || script.problems.size() != 0)
+        {
+            return null;
+        }
+
+        int lineDelta = block2.lastLine() - block.lastLine();
+        moveRecords(_parser.lexer.token.start - indexDelta, lineDelta);
+        if (finder.owner instanceof Ast.FunctionCommonNode)
+        {
+            ((Ast.FunctionCommonNode) finder.owner).setBody(block2);
+        }
+        else if (finder.owner instanceof Ast.ClassDefinitionNode)
+        {
+            ((Ast.ClassDefinitionNode) finder.owner).block = block2;
+        }
+        else if (finder.owner instanceof Ast.EnumDefinitionNode)
+        {
+            ((Ast.EnumDefinitionNode) finder.owner).block = block2;
+        }
+        else
+        {
+            ((Ast.PackageDefinitionNode) finder.owner).block = block2;
+        }
+
+        var packages = new Vector<Ast.PackageDefinitionNode>();
+        var directives = new Vector<Ast.DirectiveNode>();
+        for (var item : _program.packages)
+        {
+            add(item, packages, directives);
+        }
+        for (var item : _program.directives)
+        {
+            add(item, packages, directives);
+        }
+        var program = new Ast.ProgramNode(packages, directives);
+        program.script = script;
+        program.setSpan(_program.spanStart(), _program.spanEnd());
+        new Mover(block.end(), lineDelta, indexDelta, block2).move(program);
+        return program;
+    }
+
+    private Ast.ProgramNode reparseItems()
+    {
+        var script = _parser.script;
+        var script2 = _program.script;
+        var items = new Vector<Ast.Node>(_program.packages);
+        items.addAll(_program.directives);
+        int k = 0;
+        while (k != items.size() && items.get(k).end() < _edit.start())
+        {
+            ++k;
+        }
+        int m = k;
+        while (m != items.size() && items.get(m).start() <= _edit.end())
+        {
+            ++m;
+        }
+        var previous = k >= 2 ? items.get(k - 2) : null;
+        var next = m != items.size() ? items.get(m) : null;
+        int regionStart = previous == null ? 0 : previous.end();
+        int indexDelta = _edit.indexDelta();
+
+        script.clearRecords();
+        script.copyPositions(script2, 0, regionStart, 0, 0);
+        for (var comment : script2.comments)
+        {
+            if (comment.start() >= regionStart)
+            {
+                break;
+            }
+            script.addComment(comment);
+        }
+        _parser.restart(regionStart, previous == null ? 1 : previous.lastLine());
+        var region = _parser.parseProgramRegion(previous == null || previous instanceof Ast.PackageDefinitionNode, next == null ? -1 : next.start() + indexDelta);
+        if (region == null || script.problems.size() != 0)
+        {
+            return null;
+        }
+        if (next instanceof Ast.PackageDefinitionNode && region.size() != 0 && !(region.lastElement() instanceof Ast.PackageDefinitionNode))
+        {
+            return null;
+        }
+
+        long delta = 0;
+        if (next != null)
+        {
+            int lineDelta = _parser.lexer.token.firstLine - next.firstLine();
+            delta = ((long) lineDelta << 32) + indexDelta;
+            moveRecords(next.start(), lineDelta);
+            var mover = new Mover(next.start(), lineDelta, indexDelta, null);
+            for (int i = m; i != items.size(); ++i)
+            {
+                mover.move(items.get(i));
+                region.add(items.get(i));
+            }
+        }
+
+        var packages = new Vector<Ast.PackageDefinitionNode>();
+        var directives = new Vector<Ast.DirectiveNode>();
+        for (int i = 0; i < k - 1; ++i)
+        {
+            add(items.get(i), packages, directives);
+        }
+        for (var item : region)
+        {
+            add(item, packages, directives);
+        }
+        var program = new Ast.ProgramNode(packages, directives);
+        program.script = script;
+        var token = _parser.lexer.token;
+        long spanStart = previous != null ? _program.spanStart()
+            : packages.size() != 0 ? packages.get(0).spanStart()
+            : directives.size() != 0 ? directives.get(0).spanStart()
+            : ((long) token.firstLine << 32) | token.start;
+        if (next != null)
+        {
+            program.setSpan(spanStart, _program.spanEnd() + delta);
+        }
+        else
+        {
+            program.setSpan(spanStart, spanStart);
+            _parser.pushLocation(program);
+            _parser.popLocation(program);
+        }
+        return program;
+    }
+
+    /*
+     * Copies the line starts and comments of the previous script from the
+     * given index on, where parsing stopped, moved by the edit.
+     */
+    private void moveRecords(int index, int lineDelta)
+    {
+        var script = _parser.script;
+        var script2 = _program.script;
+        long delta = ((long) lineDelta << 32) + _edit.indexDelta();
+        script.copyPositions(script2, index, Integer.MAX_VALUE, _edit.indexDelta(), script.source().length() - script2.source().length());
+        for (int i = lowerBound(script2.comments, index); i != script2.comments.size(); ++i)
+        {
+            var comment = script2.comments.get(i);
+            comment.setSpan(comment.spanStart() + delta, comment.spanEnd() + delta);
+            _parser.lexer.addComment(comment);
+        }
+    }
+
+    private void add(Ast.Node item, Vector<Ast.PackageDefinitionNode> packages, Vector<Ast.DirectiveNode> directives)
+    {
+        if (item instanceof Ast.PackageDefinitionNode)
+        {
+            ((Ast.PackageDefinitionNode) item).script = _parser.script;
+            packages.add((Ast.PackageDefinitionNode) item);
+        }
+        else
+        {
+            directives.add((Ast.DirectiveNode) item);
+        }
+    }
+
+    static private int lowerBound(Vector<Ast.CommentNode> comments, int index)
+    {
+        int low = 0;
+        int high = comments.size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (comments.get(middle).start() < index)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * Finds the innermost block holding an edit strictly inside its braces
+     * that can be parsed again on its own: a function body or the block of a
+     * class, enum or package. Interface blocks are left out, as their
+     * definition checks their directives.
+     */
+    static private final class BlockFinder implements AstLayout.Fields
+    {
+        public Ast.Node owner = null;
+        public Ast.BlockNode block = null;
+        public boolean atConstructor = false;
+        private TextEdit _edit;
+        private Ast.Node _next = null;
+
+        public BlockFinder(TextEdit edit)
+        {
+            _edit = edit;
+        }
+
+        public void find(Ast.ProgramNode program)
+        {
+            Ast.Node parent = null;
+            for (Ast.Node node = program; node != null; parent = node, node = _next)
+            {
+                if (node instanceof Ast.FunctionCommonNode)
+                {
+                    var body = ((Ast.FunctionCommonNode) node).body();
+                    consider(node, body instanceof Ast.BlockNode ? (Ast.BlockNode) body : null, parent instanceof Ast.FunctionDefinitionNode && ((Ast.FunctionDefinitionNode) parent).markConstructor());
+                }
+                else if (node instanceof Ast.ClassDefinitionNode)
+                {
+                    consider(node, ((Ast.ClassDefinitionNode) node).block, false);
+                }
+                else if (node instanceof Ast.EnumDefinitionNode)
+                {
+                    consider(node, ((Ast.EnumDefinitionNode) node).block, false);
+                }
+                else if (node instanceof Ast.PackageDefinitionNode)
+                {
+                    consider(node, ((Ast.PackageDefinitionNode) node).block, false);
+                }
+                _next = null;
+                AstLayout.transfer(node, node, AstLayout.kindOf(node), this);
+            }
+        }
+
+        private void consider(Ast.Node owner, Ast.BlockNode block, boolean atConstructor)
+        {
+            if (block != null && block.start() < _edit.start() && _edit.end() < block.end())
+            {
+                this.owner = owner;
+                this.block = block;
+                this.atConstructor = atConstructor;
+            }
+        }
+
+        public <T extends Ast.Node> T node(T node)
+        {
+            if (_next == null && node != null && node.start() <= _edit.start() && _edit.end() <= node.end())
+            {
+                _next = node;
+            }
+            return node;
+        }
+
+        public <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            if (nodes != null)
+            {
+                for (var node : nodes)
+                {
+                    node(node);
+                }
+            }
+            return nodes;
+        }
+
+        public Object xmlValue(Object value)
+        {
+            return value instanceof Ast.Node ? node((Ast.Node) value) : value;
+        }
+    }
+
+    /*
+     * Moves the nodes of the previous program at or after an index by an
+     * edit, and the ends of those holding the index. Nodes ending before the
+     * index are left as they are, with their children.
+     */
+    static private final class Mover implements AstLayout.Fields
+    {
+        private int _index;
+        private int _lineDelta;
+        private int _indexDelta;
+        private long _delta;
+        private Ast.Node _parsed;
+
+        /*
+         * The parsed node, if any, is already where it belongs.
+         */
+        public Mover(int index, int lineDelta, int indexDelta, Ast.Node parsed)
+        {
+            _index = index;
+            _lineDelta = lineDelta;
+            _indexDelta = indexDelta;
+            _delta = ((long) lineDelta << 32) + indexDelta;
+            _parsed = parsed;
+        }
+
+        public void move(Ast.Node node)
+        {
+            if (node == _parsed || node.end() < _index)
+            {
+                return;
+            }
+            node.setSpan(node.start() < _index ? node.spanStart() : node.spanStart() + _delta, node.spanEnd() + _delta);
+            AstLayout.transfer(node, node, AstLayout.kindOf(node), this);
+        }
+
+        public <T extends Ast.Node> T node(T node)
+        {
+            if (node != null)
+            {
+                move(node);
+            }
+            return node;
+        }
+
+        public <T extends Ast.Node> Vector<T> nodes(Vector<T> nodes)
+        {
+            if (nodes != null)
+            {
+                for (var node : nodes)
+                {
+                    move(node);
+                }
+            }
+            return nodes;
+        }
+
+        public Object xmlValue(Object value)
+        {
+            if (value instanceof Ast.Node)
+            {
+                move((Ast.Node) value);
+            }
+            return value;
+        }
+
+        public Span span(Span span)
+        {
+            if (span == null || span.start() < _index)
+            {
+                return span;
+            }
+            return new Span(span.firstLine() + _lineDelta, span.start() + _indexDelta, span.lastLine() + _lineDelta, span.end() + _indexDelta);
+        }
+    }
+}
@@ -10,16 +10,43 @@ public final class Script
     public Vector<Script> subscripts = null;
     public Vector<Problem> problems = new Vector<>();
     protected IntVector lineStarts = new IntVector();
-    private String _source;
+    /* Code-unit offsets of the line starts, parallel to lineStarts. */
+    private IntVector _lineStartCodeUnits = new IntVector();
+    /* Ascending code-point indices of the supplementary characters lexed so far. */
+    private IntVector _supplementaryIndices = new IntVector();
+    private SourceText _source;
     private String _url;
+    private NameTable _nameTable;
     private boolean _invalidated;
+    /*
+     * Where lexed comments go: to comments, to the sink if one is set, or
+     * nowhere if neither is wanted.
+     */
+    private boolean _keepsComments = true;
+    private CommentSink _commentSink = null;
+    private int _lastSunkComment = -1;
+    /* Whether a lazy parse skipped function bodies of this script. */
+    private boolean _skippedFunctionBodies;
 
-    public Script(String source, String url)
+    public Script(SourceText source, String url, NameTable nameTable)
     {
         _source = source;
         _url = url;
+        _nameTable = nameTable;
         lineStarts.push(0);
         lineStarts.push(0);
+        _lineStartCodeUnits.push(0);
+        _lineStartCodeUnits.push(0);
+    }
+
+    public Script(String source, String url, NameTable nameTable)
+    {
+        this(SourceText.fromString(source), url, nameTable);
+    }
+
+    public Script(String source, String url)
+    {
+        this(source, url, new NameTable());
     }
 
     public Script(String source)
@@ -27,7 +54,16 @@ public final class Script
         this(source, null);
     }
 
+    /**
+     * The source as a string, decoded on first use if the script was created
+     * from UTF-8 text.
+     */
     public String source()
+    {
+        return _source.toString();
+    }
+
+    public SourceText sourceText()
     {
         return _source;
     }
@@ -37,6 +73,68 @@ public final class Script
         return _url;
     }
 
+    public NameTable nameTable()
+    {
+        return _nameTable;
+    }
+
+    public boolean keepsComments()
+    {
+        return _keepsComments;
+    }
+
+    /**
+     * Whether lexed comments are kept in <code>comments</code>. When they are
+     * not and no sink is set, the lexer skips comments without creating
+     * nodes for them. Must be set before lexing.
+     */
+    public void setKeepsComments(boolean value)
+    {
+        _keepsComments = value;
+    }
+
+    public CommentSink commentSink()
+    {
+        return _commentSink;
+    }
+
+    /**
+     * Sets a sink to which lexed comments are passed instead of being kept
+     * in <code>comments</code>. Must be set before lexing.
+     */
+    public void setCommentSink(CommentSink sink)
+    {
+        _commentSink = sink;
+    }
+
+    /*
+     * Whether the lexer has to create nodes for comments.
+     */
+    boolean recordsComments()
+    {
+        return _commentSink != null || _keepsComments;
+    }
+
+    /*
+     * Rewinds may lex the same comment again, so comments not after the last
+     * one recorded are ignored.
+     */
+    void addComment(Ast.CommentNode node)
+    {
+        if (_commentSink != null)
+        {
+            if (node.start() > _lastSunkComment)
+            {
+                _lastSunkComment = node.start();
+                _commentSink.comment(this, node);
+            }
+        }
+        else if (_keepsComments && (comments.size() == 0 || comments.lastElement().start() < node.start()))
+        {
+            comments.add(node);
+        }
+    }
+
     public boolean invalidated()
     {
         return _invalidated;
@@ -49,19 +147,159 @@ public final class Script
 
     public int getLineStartCodeUnits(int lineNum)
     {
-        return _source.offsetByCodePoints(0, getLineStart(lineNum));
+        return _lineStartCodeUnits.get(lineNum);
+    }
+
+    /**
+     * Converts a code-point index into a code-unit offset of the source.
+     * Only the supplementary characters lexed so far are taken into account.
+     */
+    public int getCodeUnitOffset(int index)
+    {
+        var supplementary = _supplementaryIndices;
+        int low = 0;
+        int high = supplementary.length();
+        if (high == 0 || supplementary.last() < index)
+        {
+            return index + high;
+        }
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (supplementary.get(middle) < index)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return index + low;
     }
 
     public int getLineIndentation(int lineNum)
     {
-        int lineStart = this.getLineStartCodeUnits(lineNum);
-        int i = 0;
-        var str = _source.substring(lineStart);
-        while (i != str.length() && SxcSourceCharacter.isWhiteSpace((int) str.charAt(i)))
+        var source = this.source();
+        int i = this.getLineStartCodeUnits(lineNum);
+        int lineStart = i;
+        while (i != source.length() && SxcSourceCharacter.isWhiteSpace((int) source.charAt(i)))
         {
             ++i;
         }
-        return i;
+        return i - lineStart;
+    }
+
+    void addLineStart(int index)
+    {
+        lineStarts.push(index);
+        _lineStartCodeUnits.push(getCodeUnitOffset(index));
+    }
+
+    void truncateLineStarts(int length)
+    {
+        lineStarts.setLength(length);
+        _lineStartCodeUnits.setLength(length);
+    }
+
+    IntVector lineStartCodeUnits()
+    {
+        return _lineStartCodeUnits;
+    }
+
+    IntVector supplementaryIndices()
+    {
+        return _supplementaryIndices;
+    }
+
+    /*
+     * Rewinds may lex the same character again, so indices already recorded
+     * are ignored.
+     */
+    void addSupplementaryIndex(int index)
+    {
+        if (_supplementaryIndices.length() == 0 || _supplementaryIndices.last() < index)
+        {
+            _supplementaryIndices.push(index);
+        }
+    }
+
+    /*
+     * Restores the invalidation flag after the parser abandons a lazy skip
+     * and drops the problems it collected.
+     */
+    void setInvalidated(boolean value)
+    {
+        _invalidated = value;
+    }
+
+    boolean skippedFunctionBodies()
+    {
+        return _skippedFunctionBodies;
+    }
+
+    void setSkippedFunctionBodies()
+    {
+        _skippedFunctionBodies = true;
+    }
+
+    /*
+     * Discards everything recorded while lexing, so that the script can be
+     * lexed again from a different position.
+     */
+    void clearRecords()
+    {
+        comments.clear();
+        subscripts = null;
+        problems.clear();
+        truncateLineStarts(2);
+        _supplementaryIndices.setLength(0);
+        _invalidated = false;
+        _skippedFunctionBodies = false;
+        _lastSunkComment = -1;
+    }
+
+    /*
+     * Appends the line starts and supplementary character indices of another
+     * script that lie from <code>start</code> to <code>end</code>, moved by
+     * an edit between the two scripts. Positions already recorded are skipped.
+     */
+    void copyPositions(Script script, int start, int end, int indexDelta, int codeUnitDelta)
+    {
+        var lineStarts2 = script.lineStarts;
+        for (int i = lowerBound(lineStarts2, start, 2); i != lineStarts2.length() && lineStarts2.get(i) < end; ++i)
+        {
+            int index = lineStarts2.get(i) + indexDelta;
+            if (index > lineStarts.last())
+            {
+                lineStarts.push(index);
+                _lineStartCodeUnits.push(script._lineStartCodeUnits.get(i) + codeUnitDelta);
+            }
+        }
+        var supplementary = script._supplementaryIndices;
+        for (int i = lowerBound(supplementary, start, 0); i != supplementary.length() && supplementary.get(i) < end; ++i)
+        {
+            addSupplementaryIndex(supplementary.get(i) + indexDelta);
+        }
+    }
+
+    static private int lowerBound(IntVector vector, int value, int from)
+    {
+        int low = from;
+        int high = vector.length();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (vector.get(middle) < value)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
     }
 
     public Problem collectProblem(Problem problem)
@@ -0,0 +1,88 @@
+package com.recoyx.sxc.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Text of a script, held either as UTF-8 bytes or as a string. Files at
+ * least <code>MAPPING_THRESHOLD</code> bytes long are memory-mapped rather
+ * than read. The bytes are lexed directly; they are decoded into a string
+ * only when the string is asked for.
+ */
+public final class SourceText
+{
+    static public final long MAPPING_THRESHOLD = 1 << 20;
+
+    private ByteBuffer _bytes;
+    private String _string;
+
+    private SourceText(ByteBuffer bytes, String string)
+    {
+        _bytes = bytes;
+        _string = string;
+    }
+
+    static public SourceText fromString(String string)
+    {
+        return new SourceText(null, string);
+    }
+
+    static public SourceText fromUTF8(ByteBuffer bytes)
+    {
+        return new SourceText(bytes.duplicate(), null);
+    }
+
+    static public SourceText read(Path path) throws IOException
+    {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size >= MAPPING_THRESHOLD)
+            {
+                return new SourceText(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), null);
+            }
+        }
+        return new SourceText(ByteBuffer.wrap(Files.readAllBytes(path)), null);
+    }
+
+    /**
+     * The UTF-8 bytes of the text. Text created from a string is encoded on
+     * each call.
+     */
+    public ByteBuffer bytes()
+    {
+        return _bytes != null ? _bytes.asReadOnlyBuffer() : ByteBuffer.wrap(_string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Input for lexing the text: its UTF-8 bytes if it has them, its string
+     * otherwise.
+     */
+    public LexerInput input()
+    {
+        return _bytes != null ? LexerInput.fromUTF8(_bytes) : LexerInput.fromString(_string);
+    }
+
+    /**
+     * Whether the string has been created, either given or decoded.
+     */
+    public boolean isDecoded()
+    {
+        return _string != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (_string == null)
+        {
+            _string = StandardCharsets.UTF_8.decode(_bytes.duplicate()).toString();
+        }
+        return _string;
+    }
+}
@@ -0,0 +1,51 @@
+package com.recoyx.sxc.parser;
+
+/**
+ * Replacement of the source text between two indices of a script. Indices
+ * are in code points, as those of spans are.
+ */
+public final class TextEdit
+{
+    private int _start;
+    private int _end;
+    private String _text;
+
+    public TextEdit(int start, int end, String text)
+    {
+        _start = start;
+        _end = end;
+        _text = text;
+    }
+
+    public int start()
+    {
+        return _start;
+    }
+
+    public int end()
+    {
+        return _end;
+    }
+
+    public String text()
+    {
+        return _text;
+    }
+
+    /**
+     * Number of code points by which the edit moves the text after it.
+     */
+    public int indexDelta()
+    {
+        return _text.codePointCount(0, _text.length()) - (_end - _start);
+    }
+
+    /**
+     * Returns the source of a script with the edit applied.
+     */
+    public String applyTo(Script script)
+    {
+        var source = script.source();
+        return source.substring(0, script.getCodeUnitOffset(_start)) + _text + source.substring(script.getCodeUnitOffset(_end));
+    }
+}
@@ -0,0 +1,180 @@
+package com.recoyx.sxc.parser;
+
+import com.recoyx.sxc.util.IntVector;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * Columnar record of the tokens shifted by a <code>Lexer</code>, replayed by
+ * index when the parser rewinds instead of lexing the same text again.
+ *
+ * Besides the token metrics, each entry records the side effects its scan had
+ * on the <code>Script</code> (line starts, comments and non-fatal problems), so
+ * that a replay leaves the script exactly as re-lexing would.
+ */
+final class TokenBuffer
+{
+    static private final Token[] TOKENS = Token.values();
+    static private final Lexer.Mode[] MODES = Lexer.Mode.values();
+
+    private int _length = 0;
+    private int[] _types = new int[256];
+    private int[] _starts = new int[256];
+    private int[] _ends = new int[256];
+    private int[] _startOffsets = new int[256];
+    private int[] _endOffsets = new int[256];
+    private int[] _firstLines = new int[256];
+    private int[] _lastLines = new int[256];
+    private int[] _modes = new int[256];
+    private int[] _rescans = new int[256];
+    private String[] _stringValues = new String[256];
+    private double[] _numberValues = new double[256];
+    private long[] _longValues = new long[256];
+    private boolean[] _integrals = new boolean[256];
+    private boolean[] _booleanValues = new boolean[256];
+    private String[] _regExpFlags = new String[256];
+
+    private int[] _lineStartsEnd = new int[256];
+    private int[] _commentsEnd = new int[256];
+    private int[] _problemsEnd = new int[256];
+    private IntVector _lineStarts = new IntVector();
+    private Vector<Ast.CommentNode> _comments = new Vector<>();
+    private Vector<Problem> _problems = new Vector<>();
+
+    public int length()
+    {
+        return _length;
+    }
+
+    public Lexer.Mode mode(int i)
+    {
+        return MODES[_modes[i]];
+    }
+
+    /**
+     * Rescan applied to the preceding token before this entry was scanned.
+     */
+    public int rescan(int i)
+    {
+        return _rescans[i];
+    }
+
+    public int endOffset(int i)
+    {
+        return _endOffsets[i];
+    }
+
+    public void truncate(int length)
+    {
+        if (length >= _length)
+        {
+            return;
+        }
+        _length = length;
+        _lineStarts.setLength(length == 0 ? 0 : _lineStartsEnd[length - 1]);
+        _comments.setSize(length == 0 ? 0 : _commentsEnd[length - 1]);
+        _problems.setSize(length == 0 ? 0 : _problemsEnd[length - 1]);
+    }
+
+    /**
+     * Appends the token just scanned. The script's line starts, comments and
+     * problems past the given counts are the side effects of that scan.
+     */
+    public void add(TokenMetrics token, Lexer.Mode mode, int rescan, int endOffset, Script script, IntVector lineStartOffsets, int numLineStarts, int numComments, int numProblems)
+    {
+        if (_length == _types.length)
+        {
+            grow();
+        }
+        int i = _length++;
+        _types[i] = token.type.ordinal();
+        _starts[i] = token.start;
+        _ends[i] = token.end;
+        _startOffsets[i] = token.startOffset;
+        _endOffsets[i] = endOffset;
+        _firstLines[i] = token.firstLine;
+        _lastLines[i] = token.lastLine;
+        _modes[i] = mode.ordinal();
+        _rescans[i] = rescan;
+        _stringValues[i] = token.stringValue;
+        _numberValues[i] = token.numberValue;
+        _longValues[i] = token.longValue;
+        _integrals[i] = token.isIntegral;
+        _booleanValues[i] = token.booleanValue;
+        _regExpFlags[i] = token.regExpFlags;
+
+        for (int j = numLineStarts; j != script.lineStarts.length(); ++j)
+        {
+            _lineStarts.push(script.lineStarts.get(j));
+            _lineStarts.push(lineStartOffsets.get(j));
+        }
+        for (int j = numComments; j != script.comments.size(); ++j)
+        {
+            _comments.add(script.comments.get(j));
+        }
+        for (int j = numProblems; j != script.problems.size(); ++j)
+        {
+            _problems.add(script.problems.get(j));
+        }
+        _lineStartsEnd[i] = _lineStarts.length();
+        _commentsEnd[i] = _comments.size();
+        _problemsEnd[i] = _problems.size();
+    }
+
+    /**
+     * Loads entry <code>i</code> into <code>token</code> and reapplies its
+     * side effects to the lexer's script.
+     */
+    public void replay(int i, TokenMetrics token, Lexer lexer)
+    {
+        token.type = TOKENS[_types[i]];
+        token.start = _starts[i];
+        token.end = _ends[i];
+        token.startOffset = _startOffsets[i];
+        token.firstLine = _firstLines[i];
+        token.lastLine = _lastLines[i];
+        token.stringValue = _stringValues[i];
+        token.numberValue = _numberValues[i];
+        token.longValue = _longValues[i];
+        token.isIntegral = _integrals[i];
+        token.booleanValue = _booleanValues[i];
+        token.regExpFlags = _regExpFlags[i];
+
+        for (int j = i == 0 ? 0 : _lineStartsEnd[i - 1]; j != _lineStartsEnd[i]; j += 2)
+        {
+            lexer.addLineStart(_lineStarts.get(j), _lineStarts.get(j + 1));
+        }
+        for (int j = i == 0 ? 0 : _commentsEnd[i - 1]; j != _commentsEnd[i]; ++j)
+        {
+            lexer.addComment(_comments.get(j));
+        }
+        var script = lexer.script();
+        for (int j = i == 0 ? 0 : _problemsEnd[i - 1]; j != _problemsEnd[i]; ++j)
+        {
+            script.collectProblem(_problems.get(j));
+        }
+    }
+
+    private void grow()
+    {
+        int capacity = _types.length << 1;
+        _types = Arrays.copyOf(_types, capacity);
+        _starts = Arrays.copyOf(_starts, capacity);
+        _ends = Arrays.copyOf(_ends, capacity);
+        _startOffsets = Arrays.copyOf(_startOffsets, capacity);
+        _endOffsets = Arrays.copyOf(_endOffsets, capacity);
+        _firstLines = Arrays.copyOf(_firstLines, capacity);
+        _lastLines = Arrays.copyOf(_lastLines, capacity);
+        _modes = Arrays.copyOf(_modes, capacity);
+        _rescans = Arrays.copyOf(_rescans, capacity);
+        _stringValues = Arrays.copyOf(_stringValues, capacity);
+        _numberValues = Arrays.copyOf(_numberValues, capacity);
+        _longValues = Arrays.copyOf(_longValues, capacity);
+        _integrals = Arrays.copyOf(_integrals, capacity);
+        _booleanValues = Arrays.copyOf(_booleanValues, capacity);
+        _regExpFlags = Arrays.copyOf(_regExpFlags, capacity);
+        _lineStartsEnd = Arrays.copyOf(_lineStartsEnd, capacity);
+        _commentsEnd = Arrays.copyOf(_commentsEnd, capacity);
+        _problemsEnd = Arrays.copyOf(_problemsEnd, capacity);
+    }
+}
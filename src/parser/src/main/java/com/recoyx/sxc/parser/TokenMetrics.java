@@ -9,9 +9,19 @@ public final class TokenMetrics
     public Token type = Token.EOF;
     public String stringValue = "";
     public double numberValue = Double.NaN;
+    /**
+     * Exact value of a numeric literal written as a decimal or hexadecimal
+     * integer that fits in a long, as told by <code>isIntegral</code>.
+     */
+    public long longValue = 0;
+    public boolean isIntegral = false;
     public boolean booleanValue = false;
     public String regExpFlags = "";
     public int start = 0;
+    /**
+     * Start of the token in <code>LexerInput</code> units.
+     */
+    public int startOffset = 0;
     public int end = 0;
     public int firstLine = 1;
     public int lastLine = 1;
@@ -26,9 +36,12 @@ public final class TokenMetrics
         data2.type = this.type;
         data2.stringValue = this.stringValue;
         data2.numberValue = this.numberValue;
+        data2.longValue = this.longValue;
+        data2.isIntegral = this.isIntegral;
         data2.booleanValue = this.booleanValue;
         data2.regExpFlags = this.regExpFlags;
         data2.start = this.start;
+        data2.startOffset = this.startOffset;
         data2.end = this.end;
         data2.firstLine = this.firstLine;
         data2.lastLine = this.lastLine;
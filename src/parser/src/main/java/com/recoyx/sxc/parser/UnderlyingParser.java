@@ -8,10 +8,9 @@ import com.recoyx.sxc.util.VectorUtils;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Vector;
 import java.util.stream.IntStream;
@@ -60,6 +59,39 @@ final class UnderlyingParser
     private AttributeData attributeData;
     private IntVector functionFlagsStack = new IntVector();
 
+    /**
+     * Skips brace-delimited function bodies, leaving them to be parsed on
+     * demand by <code>Ast.FunctionCommonNode.body()</code>.
+     */
+    public boolean lazyFunctionBodies = false;
+    public IncludeCache includeCache = null;
+    /*
+     * Scripts being parsed from the root script down to this one, shared by
+     * the parsers of included scripts.
+     */
+    private IncludeChain includeChain = null;
+    /*
+     * For each parenthesis open while skipping a function body, whether it
+     * follows a statement keyword, in which case its closing does not end an operand.
+     */
+    private IntVector skippedParens = new IntVector();
+
+    /*
+     * Checkpoint stack for speculative parsing. Each checkpoint takes
+     * CHECKPOINT_STRIDE slots of checkpointInts plus two slots of
+     * checkpointStrings and one each of checkpointNumbers and checkpointLongs;
+     * the arrays are reused across checkpoints.
+     */
+    static private final int CHECKPOINT_STRIDE = 24;
+    static private final Token[] TOKENS = Token.values();
+    static private final Lexer.Mode[] LEXER_MODES = Lexer.Mode.values();
+    private int[] checkpointInts = new int[CHECKPOINT_STRIDE * 8];
+    private String[] checkpointStrings = new String[2 * 8];
+    private double[] checkpointNumbers = new double[8];
+    private long[] checkpointLongs = new long[8];
+    private int numCheckpoints = 0;
+    private int numRewinds = 0;
+
     /*
      * Result after parsing a directive or statement.
      */
@@ -83,6 +115,7 @@ final class UnderlyingParser
 
     public void clearState()
     {
+        numCheckpoints = 0;
         lexer.mode = Lexer.Mode.NORMAL;
         curlyStack.setSize(0);
         locations.setLength(0);
@@ -101,6 +134,12 @@ final class UnderlyingParser
         locations.push(span.firstLine());
     }
 
+    public void pushLocation(Ast.Node node)
+    {
+        locations.push(node.start());
+        locations.push(node.firstLine());
+    }
+
     public void duplicateLocation()
     {
         var l = locations.length();
@@ -113,13 +152,26 @@ final class UnderlyingParser
         return new Span(locations.pop(), locations.pop(), previousToken.lastLine, previousToken.end);
     }
 
+    /*
+     * Sets the span of a node from the location pushed last to the end of
+     * the previous token, without allocating a <code>Span</code>.
+     */
+    public void popLocation(Ast.Node node)
+    {
+        int firstLine = locations.pop();
+        node.setSpan(firstLine, locations.pop(), previousToken.lastLine, previousToken.end);
+    }
+
     public Parser.State state()
     {
         Parser.State state = new Parser.State();
         state.index = lexer.index;
+        state.offset = lexer.offset;
         state.line = lexer.line;
         state.numLineStarts = script.lineStarts.length();
         state.lexerMode = lexer.mode;
+        state.tokenIndex = lexer.tokenIndex;
+        state.lexerRescan = lexer.rescan;
         token.copyTo(state.token);
         previousToken.copyTo(state.previousToken);
         state.numComments = script.comments.size();
@@ -131,12 +183,126 @@ final class UnderlyingParser
         return state;
     }
 
+    public int numRewinds()
+    {
+        return numRewinds;
+    }
+
+    /**
+     * Pushes a checkpoint holding the same data as <code>state()</code>,
+     * without allocating. Returns a mark for <code>rollback()</code> or
+     * <code>releaseCheckpoint()</code>, either of which also drops any
+     * checkpoint pushed after it.
+     */
+    public int checkpoint()
+    {
+        int mark = numCheckpoints++;
+        if (numCheckpoints * CHECKPOINT_STRIDE > checkpointInts.length)
+        {
+            checkpointInts = Arrays.copyOf(checkpointInts, checkpointInts.length << 1);
+            checkpointStrings = Arrays.copyOf(checkpointStrings, checkpointStrings.length << 1);
+            checkpointNumbers = Arrays.copyOf(checkpointNumbers, checkpointNumbers.length << 1);
+            checkpointLongs = Arrays.copyOf(checkpointLongs, checkpointLongs.length << 1);
+        }
+        var ints = checkpointInts;
+        int i = mark * CHECKPOINT_STRIDE;
+        ints[i] = lexer.index;
+        ints[i + 1] = lexer.offset;
+        ints[i + 2] = lexer.line;
+        ints[i + 3] = script.lineStarts.length();
+        ints[i + 4] = lexer.mode.ordinal();
+        ints[i + 5] = lexer.tokenIndex;
+        ints[i + 6] = lexer.rescan;
+        ints[i + 7] = token.type.ordinal();
+        ints[i + 8] = token.start;
+        ints[i + 9] = token.startOffset;
+        ints[i + 10] = token.end;
+        ints[i + 11] = token.firstLine;
+        ints[i + 12] = token.lastLine;
+        ints[i + 13] = (token.booleanValue ? 1 : 0) | (token.isIntegral ? 2 : 0);
+        ints[i + 14] = previousToken.start;
+        ints[i + 15] = previousToken.end;
+        ints[i + 16] = previousToken.firstLine;
+        ints[i + 17] = previousToken.lastLine;
+        ints[i + 18] = script.comments.size();
+        ints[i + 19] = script.problems.size();
+        ints[i + 20] = locations.length();
+        ints[i + 21] = curlyStack.size();
+        ints[i + 22] = functionFlagsStack.length();
+        ints[i + 23] = script.subscripts == null ? -1 : script.subscripts.size();
+        checkpointStrings[mark * 2] = token.stringValue;
+        checkpointStrings[mark * 2 + 1] = token.regExpFlags;
+        checkpointNumbers[mark] = token.numberValue;
+        checkpointLongs[mark] = token.longValue;
+        return mark;
+    }
+
+    public void rollback(int mark)
+    {
+        var ints = checkpointInts;
+        int i = mark * CHECKPOINT_STRIDE;
+        lexer.index = ints[i];
+        lexer.offset = ints[i + 1];
+        lexer.line = ints[i + 2];
+        script.truncateLineStarts(ints[i + 3]);
+        lexer.lineStartOffsets.setLength(ints[i + 3]);
+        lexer.mode = LEXER_MODES[ints[i + 4]];
+        lexer.tokenIndex = ints[i + 5];
+        lexer.rescan = ints[i + 6];
+        token.type = TOKENS[ints[i + 7]];
+        token.start = ints[i + 8];
+        token.startOffset = ints[i + 9];
+        token.end = ints[i + 10];
+        token.firstLine = ints[i + 11];
+        token.lastLine = ints[i + 12];
+        token.booleanValue = (ints[i + 13] & 1) != 0;
+        token.isIntegral = (ints[i + 13] & 2) != 0;
+        token.stringValue = checkpointStrings[mark * 2];
+        token.regExpFlags = checkpointStrings[mark * 2 + 1];
+        token.numberValue = checkpointNumbers[mark];
+        token.longValue = checkpointLongs[mark];
+        previousToken.start = ints[i + 14];
+        previousToken.end = ints[i + 15];
+        previousToken.firstLine = ints[i + 16];
+        previousToken.lastLine = ints[i + 17];
+        script.comments.setSize(ints[i + 18]);
+        script.problems.setSize(ints[i + 19]);
+        locations.setLength(ints[i + 20]);
+        curlyStack.setSize(ints[i + 21]);
+        functionFlagsStack.setLength(ints[i + 22]);
+        if (ints[i + 23] == -1)
+        {
+            script.subscripts = null;
+        }
+        else
+        {
+            script.subscripts.setSize(ints[i + 23]);
+        }
+        releaseCheckpoint(mark);
+        ++numRewinds;
+    }
+
+    public void releaseCheckpoint(int mark)
+    {
+        for (int i = mark; i != numCheckpoints; ++i)
+        {
+            checkpointStrings[i * 2] = null;
+            checkpointStrings[i * 2 + 1] = null;
+        }
+        numCheckpoints = mark;
+    }
+
     public void setState(Parser.State state)
     {
+        ++numRewinds;
         lexer.index = state.index;
+        lexer.offset = state.offset;
         lexer.line = state.line;
-        script.lineStarts.setLength(state.numLineStarts);
+        script.truncateLineStarts(state.numLineStarts);
+        lexer.lineStartOffsets.setLength(state.numLineStarts);
         lexer.mode = state.lexerMode;
+        lexer.tokenIndex = state.tokenIndex;
+        lexer.rescan = state.lexerRescan;
         state.token.copyTo(token);
         state.previousToken.copyTo(previousToken);
         script.problems.setSize(state.numProblems);
@@ -233,6 +399,7 @@ final class UnderlyingParser
             this.previousToken.end = this.token.end + 1;
             this.previousToken.lastLine = this.token.lastLine;
             ++this.token.start;
+            ++this.token.startOffset;
         }
         else if (token.type != Token.GT)
         {
@@ -376,12 +543,13 @@ final class UnderlyingParser
             }
             next();
             node = new Ast.VoidTypeNode();
-            node.span = popLocation();
+            this.popLocation(node);
             return node;
         }
         else
         {
-        	return parseNonAssignmentExpression(false);
+            popLocation();
+            return parseNonAssignmentExpression(false);
         }
     }
 
@@ -459,12 +627,12 @@ final class UnderlyingParser
                 this.next();
                 subexpr = this.parseExpression(allowIn, this.nextPrecedence);
                 expr = new Ast.UnaryOperatorNode(operator, subexpr);
-                expr.span = this.popLocation();
+                this.popLocation(expr);
                 if (((Ast.UnaryOperatorNode) expr).type == Operator.YIELD)
                 {
                     if (this.functionFlags() == -1)
                     {
-                        this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, expr.span, Problem.Argument.createToken(Token.YIELD));
+                        this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, expr.span(), Problem.Argument.createToken(Token.YIELD));
                     }
                     else
                     {
@@ -478,7 +646,7 @@ final class UnderlyingParser
             	markLocation();
             	next();
             	expr = new Ast.NullableTypeNode(parseExpression(false, OperatorPrecedence.UNARY_OPERATOR));
-            	expr.span = popLocation();
+            	this.popLocation(expr);
             	return this.parseSubexpression(expr, allowIn, minPrecedence);
             }
             else if (this.token.type == Token.INCREMENT
@@ -490,7 +658,7 @@ final class UnderlyingParser
                 this.invalidateLineBreak();
                 subexpr = this.parseExpression(allowIn, OperatorPrecedence.POSTFIX_OPERATOR);
                 expr = new Ast.UnaryOperatorNode(operator, subexpr);
-                expr.span = this.popLocation();
+                this.popLocation(expr);
                 expr = this.parseSubexpression(expr, allowIn, minPrecedence);
             }
         }
@@ -685,7 +853,7 @@ final class UnderlyingParser
         }
         var id = this.parseQualifiedIdentifier(true);
         var node = new Ast.SuperDotNode(arguments, (Ast.SimpleIdNode) id);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return this.parseSubexpression(node, allowIn, minPrecedence);
     }
 
@@ -707,8 +875,8 @@ final class UnderlyingParser
                 if ((node2 = this.parseOptQualifiedIdentifier()) != null)
                 {
                     node = new Ast.DotNode(node, (Ast.QualifiedIdNode) node2);
-                    this.pushLocation(base.span);
-                    node.span = this.popLocation();
+                    this.pushLocation(base);
+                    this.popLocation(node);
                 }
                 else if (this.token.type == Token.LPAREN)
                 {
@@ -725,8 +893,8 @@ final class UnderlyingParser
                     while (this.consume(Token.COMMA));
                     this.closeRightAngle();
                     node = new Ast.TypeArgumentsNode(node, dot_arguments);
-                    this.pushLocation(base.span);
-                    node.span = this.popLocation();
+                    this.pushLocation(base);
+                    this.popLocation(node);
                 }
                 else
                 {
@@ -734,32 +902,32 @@ final class UnderlyingParser
                 }
             }
             // bracket operator is indentation-aware
-            else if (this.token.type == Token.LBRACKET && (!this.isTokenAtNewLine() || lexer.getLineIndentation(base.span.firstLine()) < lexer.getLineIndentation(this.token.firstLine)))
+            else if (this.token.type == Token.LBRACKET && (!this.isTokenAtNewLine() || lexer.getLineIndentation(base.span().firstLine()) < lexer.getLineIndentation(this.token.firstLine)))
             {
                 this.openBracket("expression");
                 node2 = this.parseExpression();
                 this.closeBracket();
                 node = new Ast.BracketsNode(node, node2);
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (this.consume(Token.DESCENDANTS))
             {
                 id = (Ast.QualifiedIdNode) this.parseQualifiedIdentifier();
                 if (id instanceof Ast.AttributeIDNode)
                 {
-                    reportSyntaxError(Problem.Constants.ATTRIBUTE_ID_NOT_ALLOWED_HERE, id.span);
+                    reportSyntaxError(Problem.Constants.ATTRIBUTE_ID_NOT_ALLOWED_HERE, id.span());
                 }
                 node = new Ast.DescendantsNode(node, id);
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             // call operator is indentation-aware
-            else if (this.token.type == Token.LPAREN && (!this.isTokenAtNewLine() || lexer.getLineIndentation(base.span.firstLine()) < lexer.getLineIndentation(this.token.firstLine)))
+            else if (this.token.type == Token.LPAREN && (!this.isTokenAtNewLine() || lexer.getLineIndentation(base.span().firstLine()) < lexer.getLineIndentation(this.token.firstLine)))
             {
                 node = new Ast.CallNode(node, this.parseArguments());
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if ((this.token.type == Token.AS
                 ||    this.token.type == Token.IS
@@ -768,40 +936,44 @@ final class UnderlyingParser
             {
                 var type_op = this.token.type == Token.AS ? "as" : this.token.type == Token.IS ? "is" : "instanceof";
                 this.next();
-                Parser.State typecheck_state = null;
+                int typecheck_state = -1;
                 Ast.PatternNode typecheck_pattern = null;
                 String op_binding = null;
 
                 if (type_op != "as")
                 {
-                    typecheck_state = state();
+                    typecheck_state = checkpoint();
                     typecheck_pattern = parseOptPattern(false);
                     if (typecheck_pattern == null || typecheck_pattern.type == null)
                     {
-                        setState(typecheck_state);
+                        rollback(typecheck_state);
                         typecheck_pattern = null;
                     }
+                    else
+                    {
+                        releaseCheckpoint(typecheck_state);
+                    }
                 }
 
                 node = new Ast.TypeOperatorNode(type_op, node, typecheck_pattern == null ? this.parseTypeAnnotation(false) : null);
                 ((Ast.TypeOperatorNode) node).pattern = typecheck_pattern;
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (this.filterBinaryOperator(this.token.type) && minPrecedence.valueOf() <= this.nextPrecedence.valueOf())
             {
                 var operator = this.filteredOperator;
                 this.next();
                 node = new Ast.BinaryOperatorNode(operator, node, this.parseExpression(allowIn, OperatorPrecedence.fromValue(this.nextPrecedence.valueOf() + 1)));
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (minPrecedence.valueOf() <= OperatorPrecedence.RELATIONAL_OPERATOR.valueOf()
                 && allowIn && this.consume(Token.IN))
             {
                 node = new Ast.BinaryOperatorNode(Operator.IN, node, this.parseExpression(allowIn, OperatorPrecedence.SHIFT_OPERATOR));
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (minPrecedence.valueOf() <= OperatorPrecedence.TERNARY_OPERATOR.valueOf()
                 && this.consume(Token.QUESTION_MARK))
@@ -817,16 +989,16 @@ final class UnderlyingParser
                     throw this.expect(Token.COLON);
                 }
                 node = new Ast.TernaryNode(node, node2, node3);
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (token.type.isAssign() && minPrecedence.valueOf() <= OperatorPrecedence.ASSIGNMENT_OPERATOR.valueOf() && allowAssignment)
             {
                 var compound_operator = token.type.getCompoundAssignmentOperator();
                 this.next();
                 node = new Ast.AssignmentNode(compound_operator, node, this.parseExpression(allowIn, OperatorPrecedence.TERNARY_OPERATOR));
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (this.token.type == Token.COMMA && minPrecedence.valueOf() <= OperatorPrecedence.LIST_OPERATOR.valueOf())
             {
@@ -837,8 +1009,8 @@ final class UnderlyingParser
                     expressions.add(this.parseExpression(allowIn, OperatorPrecedence.TERNARY_OPERATOR));
                 }
                 node = new Ast.ListExpressionNode(expressions);
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else if (this.token.type == Token.INCREMENT
                 ||   this.token.type == Token.DECREMENT)
@@ -847,8 +1019,8 @@ final class UnderlyingParser
                 this.invalidateLineBreak();
                 this.next();
                 node = new Ast.UnaryOperatorNode(update_op, node);
-                this.pushLocation(base.span);
-                node.span = this.popLocation();
+                this.pushLocation(base);
+                this.popLocation(node);
             }
             else
             {
@@ -864,7 +1036,7 @@ final class UnderlyingParser
         this.functionFlagsStack.push(this.functionFlags() == -1 ? -1 : 0);
         var filter = this.parseParenListExpression();
         var flags = this.functionFlagsStack.pop();
-        this.pushLocation(base.span);
+        this.pushLocation(base);
         if (this.token.type == Token.COLON_COLON)
         {
             var id = this.parseQualifiedIdentifierFinal(filter);
@@ -883,7 +1055,7 @@ final class UnderlyingParser
                 this.reportSyntaxError(Problem.Constants.FILTER_MUST_NOT_CONTAIN_YIELD, this.popLocation());
             }
         }
-        base.span = this.popLocation();
+        this.popLocation(base);
         return base;
     }
 
@@ -911,33 +1083,36 @@ final class UnderlyingParser
             {
                 node = new Ast.StringLiteralNode(this.token.stringValue);
                 this.next();
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.token.type == Token.NUMERIC_LITERAL)
             {
-                node = new Ast.NumericLiteralNode(this.token.numberValue);
+                var literal = new Ast.NumericLiteralNode(this.token.numberValue);
+                literal.longValue = this.token.longValue;
+                literal.isIntegral = this.token.isIntegral;
+                node = literal;
                 this.next();
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.token.type == Token.BOOLEAN_LITERAL)
             {
                 node = new Ast.BooleanLiteralNode(this.token.booleanValue);
                 this.next();
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.consume(Token.NULL_LITERAL))
             {
                 node = new Ast.NullLiteralNode();
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.consume(Token.THIS_LITERAL))
             {
                 node = new Ast.ThisLiteralNode();
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.token.type == Token.SLASH || this.token.type == Token.DIVIDE_ASSIGN)
@@ -945,7 +1120,7 @@ final class UnderlyingParser
                 this.lexer.scanRegExpLiteral();
                 node = new Ast.RegExpLiteralNode(this.token.stringValue, this.token.regExpFlags);
                 this.next();
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.token.type == Token.LPAREN)
@@ -977,7 +1152,7 @@ final class UnderlyingParser
             {
                 var new_base = this.parseTypeAnnotation(false);
                 node = new Ast.NewOperatorNode(new_base, this.token.type == Token.LPAREN ? this.parseArguments() : null);
-                node.span = this.popLocation();
+                this.popLocation(node);
                 return node;
             }
             if (this.consume(Token.FUNCTION))
@@ -985,11 +1160,11 @@ final class UnderlyingParser
                 str = this.consumeIdentifier();
                 var fn_common = this.parseFunctionCommon();
                 node = new Ast.FunctionExpressionNode(str, fn_common);
-                node.span = this.popLocation();
+                this.popLocation(node);
 
-                if (fn_common.body == null)
+                if (!fn_common.hasBody())
                 {
-                    reportSyntaxError(Problem.Constants.FUNCTION_OMITS_BODY, node.span);
+                    reportSyntaxError(Problem.Constants.FUNCTION_OMITS_BODY, node.span());
                 }
 
                 return node;
@@ -1001,7 +1176,7 @@ final class UnderlyingParser
                     this.lexer.scanXMLMarkup();
                     node = new Ast.XMLMarkupNode(this.token.stringValue);
                     this.next();
-                    node.span = this.popLocation();
+                    this.popLocation(node);
                     return node;
                 }
                 else
@@ -1041,7 +1216,7 @@ final class UnderlyingParser
         var expr = this.parseExpression();
         this.closeParen();
         var node = new Ast.ParenExpressionNode(expr);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -1073,11 +1248,11 @@ final class UnderlyingParser
             var src = this.token.stringValue;
             this.next();
             var node = new Ast.EmbedExpressionNode(src);
-            node.span = this.popLocation();
+            this.popLocation(node);
             return node;
         }
         var id = new Ast.SimpleIdNode(null, str);
-        id.span = this.popLocation();
+        this.popLocation(id);
         return this.parseQualifiedIdentifierFinal(id);
     }
 
@@ -1109,7 +1284,7 @@ final class UnderlyingParser
         if (str != null)
         {
             node = new Ast.SimpleIdNode(null, str);
-            node.span = this.popLocation();
+            this.popLocation(node);
         }
         else if (this.token.type == Token.LPAREN)
         {
@@ -1124,7 +1299,7 @@ final class UnderlyingParser
         {
             this.next();
             node = new Ast.SimpleIdNode(null, "*");
-            node.span = this.popLocation();
+            this.popLocation(node);
         }
         else if (this.token.type == Token.ATTRIBUTE && !onlySimple)
         {
@@ -1143,14 +1318,14 @@ final class UnderlyingParser
             if (brackets != null)
             {
                 var brackets_id = new Ast.ExpressionIdNode(null, brackets);
-                brackets_id.span = brackets.span;
+                brackets_id.setSpan(brackets.spanStart(), brackets.spanEnd());
                 node = new Ast.AttributeIDNode(brackets_id);
             }
             else
             {
                 node = new Ast.AttributeIDNode((Ast.QualifiedIdNode) this.parseQualifiedIdentifier());
             }
-            node.span = this.popLocation();
+            this.popLocation(node);
         }
         else
         {
@@ -1181,7 +1356,7 @@ final class UnderlyingParser
     {
         if (this.consume(Token.COLON_COLON))
         {
-            this.pushLocation(expr.span);
+            this.pushLocation(expr);
             if (this.token.type == Token.LBRACKET && !onlySimple)
             {
                 this.openBracket("expression");
@@ -1196,7 +1371,7 @@ final class UnderlyingParser
             {
                 expr = new Ast.SimpleIdNode(expr, this.expectIdentifier());
             }
-            expr.span = this.popLocation();
+            this.popLocation(expr);
         }
         return expr;
     }
@@ -1216,7 +1391,7 @@ final class UnderlyingParser
         var elements = new Vector<Ast.ExpressionNode>();
         Ast.ExpressionNode rest = null;
 
-        var bracket_state = this.state();
+        var bracket_state = this.checkpoint();
 
         this.markLocation();
         this.openBracket("expression");
@@ -1249,18 +1424,20 @@ final class UnderlyingParser
 
         if (this.token.type == Token.ASSIGN && allowAssignment)
         {
-            this.setState(bracket_state);
+            this.rollback(bracket_state);
             this.markLocation();
             var left = this.parsePattern();
             this.next();
             var right = this.parseExpression(allowIn, OperatorPrecedence.ASSIGNMENT_OPERATOR);
             var assign = new Ast.PatternAssignmentNode(left, right);
-            assign.span = this.popLocation();
+            this.popLocation(assign);
             return assign;
         }
 
+        this.releaseCheckpoint(bracket_state);
+
         var node = new Ast.ArrayLiteralNode(elements, rest);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -1269,7 +1446,7 @@ final class UnderlyingParser
         var fields = new Vector<Ast.ObjectFieldNode>();
         Ast.ExpressionNode rest = null;
 
-        var brace_state = this.state();
+        var brace_state = this.checkpoint();
 
         this.markLocation();
         this.openBrace("expression");
@@ -1299,7 +1476,7 @@ final class UnderlyingParser
                 if (key == null && this.token.type == Token.IDENTIFIER)
                 {
                     key = new Ast.SimpleIdNode(null, this.token.stringValue);
-                    key.span = token.getSpan();
+                    key.setSpan(token.firstLine, token.start, token.lastLine, token.end);
                     this.next();
                 }
                 var problem = this.expect(Token.COLON);
@@ -1308,7 +1485,7 @@ final class UnderlyingParser
                     continue;
                 }
                 var field = new Ast.ObjectFieldNode(key, this.parseExpression(true, OperatorPrecedence.ASSIGNMENT_OPERATOR));
-                field.span = this.popLocation();
+                this.popLocation(field);
                 fields.add(field);
             }
             while (this.consume(Token.COMMA));
@@ -1317,18 +1494,20 @@ final class UnderlyingParser
 
         if (this.token.type == Token.ASSIGN && allowAssignment)
         {
-            this.setState(brace_state);
+            this.rollback(brace_state);
             this.markLocation();
             var left = this.parsePattern();
             this.next();
             var right = this.parseExpression(allowIn, OperatorPrecedence.ASSIGNMENT_OPERATOR);
             var assign = new Ast.PatternAssignmentNode(left, right);
-            assign.span = this.popLocation();
+            this.popLocation(assign);
             return assign;
         }
 
+        this.releaseCheckpoint(brace_state);
+
         var node = new Ast.ObjectLiteralNode(fields, rest);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -1341,7 +1520,7 @@ final class UnderlyingParser
         this.lexer.mode = Lexer.Mode.NORMAL;
         this.expect(Token.GT);
         var node = new Ast.XMLListNode(nodes);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -1376,7 +1555,7 @@ final class UnderlyingParser
                 this.lexer.mode = Lexer.Mode.NORMAL;
                 this.openBrace("expression");
                 attrib = new Ast.XMLAttributeNode(null, this.parseExpression());
-                attrib.span = this.popLocation();
+                this.popLocation(attrib);
                 attributes = attributes == null ? new Vector<>() : attributes;
                 attributes.add(attrib);
                 this.lexer.mode = Lexer.Mode.XML_TAG;
@@ -1418,7 +1597,7 @@ final class UnderlyingParser
                 }
 
                 attrib = new Ast.XMLAttributeNode(attrib_name, attrib_value);
-                attrib.span = this.popLocation();
+                this.popLocation(attrib);
                 attributes = attributes == null ? new Vector<>() : attributes;
                 attributes.add(attrib);
             }
@@ -1455,7 +1634,7 @@ final class UnderlyingParser
         }
 
         var node = new Ast.XMLElementNode(open_name, close_name, attributes, children);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -1476,7 +1655,7 @@ final class UnderlyingParser
             {
                 this.markLocation();
                 single_node = new Ast.XMLMarkupNode(this.token.stringValue);
-                single_node.span = this.popLocation();
+                this.popLocation(single_node);
                 this.next();
                 nodes.add(single_node);
             }
@@ -1484,7 +1663,7 @@ final class UnderlyingParser
             {
                 this.markLocation();
                 single_node = new Ast.XMLTextNode(this.token.stringValue);
-                single_node.span = this.popLocation();
+                this.popLocation(single_node);
                 this.next();
                 nodes.add(single_node);
             }
@@ -1493,7 +1672,7 @@ final class UnderlyingParser
                 this.lexer.mode = Lexer.Mode.NORMAL;
                 this.openBrace("expression");
                 single_node = new Ast.XMLTextNode(this.parseExpression());
-                single_node.span = this.popLocation();
+                this.popLocation(single_node);
                 nodes.add(single_node);
                 this.lexer.mode = Lexer.Mode.XML_CONTENT;
                 this.closeBrace();
@@ -1522,7 +1701,7 @@ final class UnderlyingParser
                 ( k == Token.PUBLIC ? "public"
                 : k == Token.PRIVATE ? "private"
                 : k == Token.PROTECTED ? "protected" : "internal" );
-            node.span = this.popLocation();
+            this.popLocation(node);
             return node;
         }
         return null;
@@ -1571,8 +1750,8 @@ final class UnderlyingParser
                 {
                     subpattern = this.consume(Token.COLON) ? this.parsePattern(allowTypeOperator) : null;
                     var field = new Ast.ObjectPatternFieldNode((Ast.SimpleIdNode) id, subpattern);
-                    this.pushLocation(id.span);
-                    field.span = this.popLocation();
+                    this.pushLocation(id);
+                    this.popLocation(field);
                     fields.add(field);
                 }
                 else if (this.token.type == Token.RBRACE)
@@ -1624,7 +1803,7 @@ final class UnderlyingParser
 
         if (pattern != null)
         {
-            pattern.span = this.popLocation();
+            this.popLocation(pattern);
         }
         else
         {
@@ -1677,10 +1856,10 @@ final class UnderlyingParser
                 {
                     this.parseSemicolon();
                     stmt = new Ast.SuperStatementNode(super_arguments);
-                    stmt.span = this.popLocation();
+                    this.popLocation(stmt);
                     if (!context.atConstructorBlock || context.foundSuperStatement)
                     {
-                        this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span, Problem.Argument.createTerm("superStatement"));
+                        this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span(), Problem.Argument.createTerm("superStatement"));
                     }
                     context.foundSuperStatement = true;
                 }
@@ -1690,7 +1869,7 @@ final class UnderlyingParser
                     var super_dot = this.parseSuperOperator(super_arguments, true, OperatorPrecedence.LIST_OPERATOR);
                     this.parseSemicolon();
                     stmt = new Ast.ExpressionStatementNode(super_dot);
-                    stmt.span = this.popLocation();
+                    this.popLocation(stmt);
                 }
             }
             // break
@@ -1703,7 +1882,7 @@ final class UnderlyingParser
                 str = isTokenAtNewLine() ? null : this.consumeIdentifier();
                 this.parseSemicolon();
                 stmt = new Ast.BreakNode(str);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
                 Ast.Node break_target = null;
                 if (str != null)
                 {
@@ -1714,7 +1893,7 @@ final class UnderlyingParser
                 }
                 else if ((break_target = context.lastBreakableStatement) == null)
                 {
-                    this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span, Problem.Argument.createToken(Token.BREAK));
+                    this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span(), Problem.Argument.createToken(Token.BREAK));
                 }
                 ((Ast.BreakNode) stmt).targetStatement = break_target;
             }
@@ -1728,7 +1907,7 @@ final class UnderlyingParser
                 str = isTokenAtNewLine() ? null : this.consumeIdentifier();
                 this.parseSemicolon();
                 stmt = new Ast.ContinueNode(str);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
                 Ast.Node cont_target = null;
                 if (str != null)
                 {
@@ -1739,7 +1918,7 @@ final class UnderlyingParser
                 }
                 else if ((cont_target = context.lastContinuableStatement) == null)
                 {
-                    this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span, Problem.Argument.createToken(Token.CONTINUE));
+                    this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span(), Problem.Argument.createToken(Token.CONTINUE));
                 }
                 ((Ast.ContinueNode) stmt).targetStatement = cont_target;
             }
@@ -1756,10 +1935,10 @@ final class UnderlyingParser
                     this.parseSemicolon();
                 }
                 stmt = new Ast.ReturnNode(expr);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
                 if (!context.underFunction)
                 {
-                    this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span, Problem.Argument.createToken(Token.RETURN));
+                    this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, stmt.span(), Problem.Argument.createToken(Token.RETURN));
                 }
             }
             // throw exc
@@ -1770,7 +1949,7 @@ final class UnderlyingParser
                 expr = this.parseExpression();
                 this.parseSemicolon();
                 stmt = new Ast.ThrowNode(expr);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             // default xml namespace = xmlNS
             else if (this.token.type == Token.DEFAULT)
@@ -1785,7 +1964,7 @@ final class UnderlyingParser
                 expr = this.parseNonAssignmentExpression(false);
                 this.parseSemicolon();
                 stmt = new Ast.DXNSStatementNode(expr);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             // with (o) this.statement
             else if (this.token.type == Token.WITH)
@@ -1803,7 +1982,7 @@ final class UnderlyingParser
                     this.expect(Token.LPAREN);
                     stmt = new Ast.EmptyStatementNode();
                 }
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             // try {}
             // try {} finally {}
@@ -1835,7 +2014,7 @@ final class UnderlyingParser
                     var catch_ctx = context.duplicate();
                     catch_ctx.lastContinuableStatement = catch_node;
                     catch_node.block = this.parseBlock(catch_ctx);
-                    catch_node.span = this.popLocation();
+                    this.popLocation(catch_node);
                     catch_elements.add(catch_node);
                 }
                 if (this.consume(Token.FINALLY))
@@ -1848,7 +2027,7 @@ final class UnderlyingParser
                 }
 
                 stmt = new Ast.TryStatementNode(try_block, catch_elements, finally_block);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             else if (this.token.type == Token.SWITCH)
             {
@@ -1875,7 +2054,7 @@ final class UnderlyingParser
                     while_ctx.labels.put(context.nextLoopLabel, stmt);
                 }
                 ((Ast.WhileStatementNode) stmt).substatement = this.parseSubstatement(while_ctx);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             else if (this.token.type == Token.DO)
             {
@@ -1898,7 +2077,7 @@ final class UnderlyingParser
                 this.expect(Token.WHILE);
                 ((Ast.DoStatementNode) stmt).expression = ((Ast.ParenExpressionNode) this.parseParenListExpression()).expression;
                 this.parseSemicolon();
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             else if (this.token.type == Token.IF)
             {
@@ -1919,7 +2098,7 @@ final class UnderlyingParser
                     if_stmt2 = this.parseSubstatement(context.duplicate());
                 }
                 stmt = new Ast.IfStatementNode(if_head, if_stmt1, if_stmt2);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
             else if (this.token.type == Token.VAR
                 ||   this.token.type == Token.CONST)
@@ -1940,7 +2119,7 @@ final class UnderlyingParser
                 this.closeParen();
                 substmt = this.parseSubstatement(context.duplicate());
                 stmt = new Ast.VarStatementNode(readOnly, varBindings, substmt);
-                stmt.span = this.popLocation();
+                this.popLocation(stmt);
             }
         }
         else if (this.token.type == Token.LBRACE)
@@ -1955,8 +2134,8 @@ final class UnderlyingParser
             {
                 this.parseSemicolon();
                 stmt = new Ast.ExpressionStatementNode(expr);
-                this.pushLocation(expr.span);
-                stmt.span = this.popLocation();
+                this.pushLocation(expr);
+                this.popLocation(stmt);
             }
         }
 
@@ -1982,7 +2161,7 @@ final class UnderlyingParser
         this.markLocation();
         this.next();
         var node = new Ast.EmptyStatementNode();
-        node.span = this.popLocation();
+        this.popLocation(node);
         this.semicolonInserted = true;
         return node;
     }
@@ -1998,7 +2177,7 @@ final class UnderlyingParser
         var pattern = this.parsePattern();
         var initialiser = this.consume(Token.ASSIGN) ? this.parseExpression(allowIn, OperatorPrecedence.ASSIGNMENT_OPERATOR) : null;
         var node = new Ast.VarBindingNode(pattern, initialiser);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -2024,7 +2203,7 @@ final class UnderlyingParser
         }
         while (this.consume(Token.COMMA));
         var node = new Ast.SimpleVarDeclarationNode(prefix == 1, bindings);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -2040,7 +2219,7 @@ final class UnderlyingParser
             var substmt = this.parseSubstatement(label_ctx);
             if (!substmt.isIterationStatement())
             {
-                this.reportSyntaxError(Problem.Constants.ILLEGAL_LABEL_STATEMENT, substmt.span);
+                this.reportSyntaxError(Problem.Constants.ILLEGAL_LABEL_STATEMENT, substmt.span());
             }
             stmt = new Ast.LabeledStatementNode(str, substmt);
         }
@@ -2051,7 +2230,7 @@ final class UnderlyingParser
             this.parseSemicolon();
             stmt = new Ast.ExpressionStatementNode(expr);
         }
-        stmt.span = this.popLocation();
+        this.popLocation(stmt);
         return stmt;
     }
 
@@ -2088,14 +2267,14 @@ final class UnderlyingParser
                 expr = this.parseExpression();
                 this.expect(Token.COLON);
                 lastCase = new Ast.SwitchCaseNode(expr, null);
-                lastCase.span = this.popLocation();
+                this.popLocation(lastCase);
                 cases.add(lastCase);
             }
             else if (this.consume(Token.DEFAULT))
             {
                 this.expect(Token.COLON);
                 lastCase = new Ast.SwitchCaseNode(null, null);
-                lastCase.span = this.popLocation();
+                this.popLocation(lastCase);
                 cases.add(lastCase);
             }
             else if (lastCase != null)
@@ -2108,7 +2287,7 @@ final class UnderlyingParser
                 }
                 lastCase.directives = lastCase.directives == null ? new Vector<>() : lastCase.directives;
                 lastCase.directives.add(drtv);
-                lastCase.span = new Span(lastCase.span.firstLine(), lastCase.span.start(), drtv.span.lastLine(), drtv.span.end());
+                lastCase.setSpan(lastCase.spanStart(), drtv.spanEnd());
             }
             else
             {
@@ -2117,7 +2296,7 @@ final class UnderlyingParser
         }
         this.closeBrace();
         this.semicolonInserted = true;
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -2135,13 +2314,13 @@ final class UnderlyingParser
             this.closeParen();
             var block = this.parseBlock(context.duplicate());
             var caseElement = new Ast.SwitchTypeCaseNode(pattern, block);
-            caseElement.span = this.popLocation();
+            this.popLocation(caseElement);
             cases.add(caseElement);
         }
         this.closeBrace();
         this.semicolonInserted = true;
         var node = new Ast.SwitchTypeStatementNode(discriminant, cases);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -2179,7 +2358,7 @@ final class UnderlyingParser
             for_ctx.labels.put(context.nextLoopLabel, stmt);
         }
         stmt.substatement = this.parseSubstatement(for_ctx);
-        stmt.span = this.popLocation();
+        this.popLocation(stmt);
         return stmt;
     }
 
@@ -2198,11 +2377,11 @@ final class UnderlyingParser
         {
             if (declr.bindings.size() != 1)
             {
-                this.reportSyntaxError(Problem.Constants.UNEXPECTED_MULTIPLE_VARIABLES, declr.span);
+                this.reportSyntaxError(Problem.Constants.UNEXPECTED_MULTIPLE_VARIABLES, declr.span());
             }
             else if (declr.bindings.get(0).initialiser != null)
             {
-                this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, declr.bindings.get(0).initialiser.span, Problem.Argument.createTerm("initialiser"));
+                this.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, declr.bindings.get(0).initialiser.span(), Problem.Argument.createTerm("initialiser"));
             }
         }
         if (!this.consume(Token.IN))
@@ -2221,7 +2400,7 @@ final class UnderlyingParser
             for_ctx.labels.put(context.nextLoopLabel, stmt);
         }
         stmt.substatement = this.parseSubstatement(for_ctx);
-        stmt.span = this.popLocation();
+        this.popLocation(stmt);
         return stmt;
     }
 
@@ -2240,26 +2419,30 @@ final class UnderlyingParser
         this.closeBrace();
         this.semicolonInserted = true;
         var node = new Ast.BlockNode(directives);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
     public Vector<Ast.DirectiveNode> parseOptDirectives(Parser.Context context)
+    {
+        return this.parseOptDirectives(context, -1);
+    }
+
+    /*
+     * Parses directives up to the first token at index <code>end</code>, or
+     * as long as there are any if <code>end</code> is -1.
+     */
+    private Vector<Ast.DirectiveNode> parseOptDirectives(Parser.Context context, int end)
     {
         var result = new Vector<Ast.DirectiveNode>();
-        var drtv = this.parseOptDirective(context);
-        if (drtv == null)
-        {
-            return result;
-        }
-        result.add(drtv);
-        for (;;)
+        while (end == -1 || this.token.start < end)
         {
-            if (this.semicolonInserted && (drtv = this.parseOptDirective(context)) != null)
+            Ast.DirectiveNode drtv = null;
+            if ((result.size() == 0 || this.semicolonInserted) && (drtv = this.parseOptDirective(context)) != null)
             {
                 result.add(drtv);
             }
-            else if (this.token.type == Token.SEMICOLON)
+            else if (result.size() != 0 && this.token.type == Token.SEMICOLON)
             {
                 result.add(this.parseEmptyStatement());
             }
@@ -2271,6 +2454,16 @@ final class UnderlyingParser
         return result;
     }
 
+    private Vector<Ast.PackageDefinitionNode> parsePackageDefinitions(int end)
+    {
+        var result = new Vector<Ast.PackageDefinitionNode>();
+        while (this.token.type == Token.PACKAGE && (end == -1 || this.token.start < end))
+        {
+            result.add(this.parsePackageDefinition());
+        }
+        return result;
+    }
+
     private Ast.DirectiveNode parseOptDirective(Parser.Context context)
     {
         this.semicolonInserted = false;
@@ -2356,7 +2549,7 @@ final class UnderlyingParser
                     this.attributeData = new AttributeData();
                     this.attributeData.qualifier = expr;
                     this.parseAttributeCombination();
-                    pushLocation(expr.span);
+                    pushLocation(expr);
                     drtv = this.parseOptAnnotatableDefinition(this.popLocation(), context);
                     if (drtv == null)
                     {
@@ -2372,9 +2565,9 @@ final class UnderlyingParser
                     }
                     expr = this.parseSubexpression(expr, true, OperatorPrecedence.LIST_OPERATOR);
                     this.parseSemicolon();
-                    this.pushLocation(expr.span);
+                    this.pushLocation(expr);
                     drtv = new Ast.ExpressionStatementNode(expr);
-                    drtv.span = this.popLocation();
+                    this.popLocation(drtv);
                     return drtv;
                 }
             }
@@ -2392,7 +2585,6 @@ final class UnderlyingParser
 
     private Ast.DirectiveNode parseBracketStartedDirective(Parser.Context context)
     {
-        this.markLocation();
         Ast.DirectiveNode drtv = null;
         Ast.ExpressionNode expr = this.parseArrayLiteral(true);
         Ast.ExpressionNode brackets = null;
@@ -2404,13 +2596,13 @@ final class UnderlyingParser
                 this.openBracket("expression");
                 brackets = this.parseExpression();
                 this.closeBracket();
-                this.pushLocation(expr.span);
+                this.pushLocation(expr);
                 expr = new Ast.BracketsNode(expr, brackets);
-                expr.span = this.popLocation();
+                this.popLocation(expr);
             }
             if (this.token.type == Token.IDENTIFIER || this.precedingKeywordDefinition() || this.precedingReservedNamespace())
             {
-                this.pushLocation(expr.span);
+                this.pushLocation(expr);
                 this.attributeData = new AttributeData();
                 this.attributeData.metaData = this.filterMetaData(expr);
                 this.parseAttributeCombination();
@@ -2426,8 +2618,8 @@ final class UnderlyingParser
         expr = this.parseSubexpression(expr, true, OperatorPrecedence.LIST_OPERATOR);
         drtv = new Ast.ExpressionStatementNode(expr);
         this.parseSemicolon();
-        this.pushLocation(expr.span);
-        drtv.span = this.popLocation();
+        this.pushLocation(expr);
+        this.popLocation(drtv);
         return drtv;
     }
 
@@ -2576,7 +2768,7 @@ final class UnderlyingParser
                 else
                 {
                     this.attributeData.qualifier = new Ast.SimpleIdNode(null, str);
-                    this.attributeData.qualifier.span = span;
+                    this.attributeData.qualifier.setSpan(span);
                 }
             }
         }
@@ -2634,7 +2826,7 @@ final class UnderlyingParser
                 var ns = this.parseOptReservedNamespace();
                 if (this.attributeData.qualifier != null)
                 {
-                    this.reportSyntaxError(Problem.Constants.DUPLICATE_NAMESPACE_ATTRIBUTE, ns.span);
+                    this.reportSyntaxError(Problem.Constants.DUPLICATE_NAMESPACE_ATTRIBUTE, ns.span());
                 }
                 else
                 {
@@ -2660,7 +2852,7 @@ final class UnderlyingParser
         this.expect(Token.STRING_LITERAL);
         this.parseSemicolon();
         var node = new Ast.IncludeDirectiveNode(src);
-        node.span = this.popLocation();
+        this.popLocation(node);
 
         // process source
         {
@@ -2674,106 +2866,229 @@ final class UnderlyingParser
                 }
                 catch (URISyntaxException exc)
                 {
-                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span);
+                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span());
                 }
             }
             else
             {
                 file = Paths.get(node.src);
             }
-            String text = null;
+            String url = null;
             if (file != null)
             {
+                file = file.toAbsolutePath().normalize();
+                url = file.toUri().toString();
+                if (this.includeChain == null)
+                {
+                    this.includeChain = new IncludeChain();
+                    this.includeChain.depths.put(this.script.url(), 0);
+                }
+                var depth = this.includeChain.depths.get(url);
+                if (depth != null)
+                {
+                    this.includeChain.refusedDepth = Math.min(this.includeChain.refusedDepth, depth);
+                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span());
+                    return node;
+                }
+            }
+            var key = file != null ? this.includeCacheKey(url, context, allowPackages) : null;
+            if (key != null)
+            {
+                var file2 = file;
+                var url2 = url;
                 try
                 {
-                    text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    var attributes = IncludeCache.readAttributes(file);
+                    var entry = this.includeCache.get(key, file, attributes, () ->
+                    {
+                        var result = new Ast.IncludeDirectiveNode(node.src);
+                        var dependsOnIncluders = this.parseIncludedSource(result, SourceText.read(file2), url2, context, allowPackages);
+                        return new IncludeCache.Entry(result.subscript, result.subpackages, result.subdirectives, attributes, dependsOnIncluders);
+                    });
+                    if (entry != null && !entry.includesAny(this.includeChain.depths.keySet()))
+                    {
+                        entry.copyTo(node);
+                        this.addSubscript(node.subscript);
+                        return node;
+                    }
+                }
+                catch (IOException | SecurityException exc)
+                {
+                    // read again below, which reports the failure
+                }
+            }
+            SourceText text = null;
+            if (file != null)
+            {
+                try
+                {
+                    text = SourceText.read(file);
                 }
                 catch (IOException exc)
                 {
-                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span);
+                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span());
                 }
                 catch (SecurityException exc)
                 {
-                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span);
+                    this.reportWarning(Problem.Constants.INCLUDE_PROCESSING_ERROR, node.span());
                 }
             }
             if (text != null)
             {
-                node.subscript = new Script(text, file.toUri().toString());
-                this.script.subscripts = this.script.subscripts == null ? new Vector<>() : this.script.subscripts;
-                this.script.subscripts.add(node.subscript);
+                this.parseIncludedSource(node, text, url, context, allowPackages);
+                this.addSubscript(node.subscript);
+            }
+        }
 
-                try
+        return node;
+    }
+
+    /*
+     * Parses an included source into a new script, assigning the script and
+     * its packages and directives to an include directive. The result is
+     * true if the source, directly or through its own includes, included a
+     * script that encloses it, which was refused: the parse then differs
+     * from that of the same source included elsewhere.
+     */
+    private boolean parseIncludedSource(Ast.IncludeDirectiveNode node, SourceText text, String url, Parser.Context context, boolean allowPackages)
+    {
+        var chain = this.includeChain;
+        int depth = chain.depths.size();
+        int outerRefusedDepth = chain.refusedDepth;
+        int refusedDepth;
+        chain.depths.put(url, depth);
+        chain.refusedDepth = Integer.MAX_VALUE;
+        try
+        {
+            parseIncludedScript(node, text, url, context, allowPackages);
+        }
+        finally
+        {
+            refusedDepth = chain.refusedDepth;
+            chain.depths.remove(url);
+            chain.refusedDepth = Math.min(outerRefusedDepth, refusedDepth);
+        }
+        return refusedDepth < depth;
+    }
+
+    private void parseIncludedScript(Ast.IncludeDirectiveNode node, SourceText text, String url, Parser.Context context, boolean allowPackages)
+    {
+        node.subscript = new Script(text, url, this.script.nameTable());
+        node.subscript.setKeepsComments(this.script.keepsComments());
+        node.subscript.setCommentSink(this.script.commentSink());
+
+        try
+        {
+            var sublexer = new Lexer(node.subscript);
+            if (this.lexer.tokenBufferEnabled())
+            {
+                sublexer.enableTokenBuffer();
+            }
+            var parser = new UnderlyingParser(sublexer);
+            parser.lazyFunctionBodies = this.lazyFunctionBodies;
+            parser.includeCache = this.includeCache;
+            parser.includeChain = this.includeChain;
+            try
+            {
+                parser.lexer.shift();
+            }
+            catch (Problem exc)
+            {
+            }
+            Vector<Ast.DirectiveNode> topIncludings = null;
+            if (allowPackages)
+            {
+                while (parser.token.type == Token.PACKAGE)
                 {
-                    var parser = new UnderlyingParser(new Lexer(node.subscript));
-                    try
-                    {
-                        parser.lexer.shift();
-                    }
-                    catch (Problem exc)
-                    {
-                    }
-                    Vector<Ast.DirectiveNode> topIncludings = null;
-                    if (allowPackages)
+                    node.subpackages = node.subpackages == null ? new Vector<>() : node.subpackages;
+                    node.subpackages.add(parser.parsePackageDefinition());
+                }
+                while (parser.token.type == Token.IDENTIFIER && parser.token.stringValue.equals("include"))
+                {
+                    parser.markLocation();
+                    parser.next();
+                    Ast.IncludeDirectiveNode drtv = parser.parseIncludeDirective(context, true);
+                    if (drtv.subpackages != null)
                     {
-                        while (parser.token.type == Token.PACKAGE)
+                        for (var p : drtv.subpackages)
                         {
                             node.subpackages = node.subpackages == null ? new Vector<>() : node.subpackages;
-                            node.subpackages.add(parser.parsePackageDefinition());
-                        }
-                        while (parser.token.type == Token.IDENTIFIER && parser.token.stringValue.equals("include"))
-                        {
-                            parser.markLocation();
-                            parser.next();
-                            Ast.IncludeDirectiveNode drtv = parser.parseIncludeDirective(context, true);
-                            if (drtv.subpackages != null)
-                            {
-                                for (var p : drtv.subpackages)
-                                {
-                                    node.subpackages = node.subpackages == null ? new Vector<>() : node.subpackages;
-                                    node.subpackages.add(p);
-                                }
-                                drtv.subpackages = null;
-                            }
-                            topIncludings = topIncludings == null ? new Vector<>() : topIncludings;
-                            topIncludings.add(drtv);
-                            if (drtv.subdirectives != null && drtv.subdirectives.size() != 0)
-                            {
-                                break;
-                            }
+                            node.subpackages.add(p);
                         }
+                        drtv.subpackages = null;
                     }
-
-                    var directives = parser.parseOptDirectives(context);
-                    if (topIncludings != null)
+                    topIncludings = topIncludings == null ? new Vector<>() : topIncludings;
+                    topIncludings.add(drtv);
+                    if (drtv.subdirectives != null && drtv.subdirectives.size() != 0)
                     {
-                        for (int i = topIncludings.size(); --i != -1;)
-                        {
-                            directives.add(0, topIncludings.get(i));
-                        }
+                        break;
                     }
-                    node.subdirectives = directives;
-
-                    if (parser.token.type != Token.EOF)
-                    {
-                        parser.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, parser.token.getSpan(), Problem.Argument.createToken(parser.token.type));
-                    }
-                }
-                catch (Problem exc)
-                {
                 }
+            }
 
-                if (node.subscript.problems != null)
+            var directives = parser.parseOptDirectives(context);
+            if (topIncludings != null)
+            {
+                for (int i = topIncludings.size(); --i != -1;)
                 {
-                    for (var problem : node.subscript.problems)
-                    {
-                        this.script.collectProblem(problem);
-                    }
+                    directives.add(0, topIncludings.get(i));
                 }
             }
+            node.subdirectives = directives;
+
+            if (parser.token.type != Token.EOF)
+            {
+                parser.reportSyntaxError(Problem.Constants.UNALLOWED_HERE, parser.token.getSpan(), Problem.Argument.createToken(parser.token.type));
+            }
+        }
+        catch (Problem exc)
+        {
         }
+    }
 
-        return node;
+    private void addSubscript(Script subscript)
+    {
+        this.script.subscripts = this.script.subscripts == null ? new Vector<>() : this.script.subscripts;
+        this.script.subscripts.add(subscript);
+        for (var problem : subscript.problems)
+        {
+            this.script.collectProblem(problem);
+        }
+    }
+
+    /*
+     * Depth of each script of an include chain, and the least depth of the
+     * scripts whose inclusion was refused since the parse of the innermost
+     * included script began.
+     */
+    static private final class IncludeChain
+    {
+        public HashMap<String, Integer> depths = new HashMap<>();
+        public int refusedDepth = Integer.MAX_VALUE;
+    }
+
+    /*
+     * Key of an included source in the include cache, or null if its parse
+     * depends on more of the context than the key holds: labels, loops,
+     * constructor blocks, or a comment sink that must see every include.
+     */
+    private String includeCacheKey(String url, Parser.Context context, boolean allowPackages)
+    {
+        if (this.includeCache == null || this.script.commentSink() != null || context.atConstructorBlock
+        ||  context.labels != null || context.lastBreakableStatement != null || context.lastContinuableStatement != null)
+        {
+            return null;
+        }
+        int variant = (allowPackages ? 1 : 0)
+            | (context.atTopLevelProgram ? 2 : 0)
+            | (context.atPackageFrame ? 4 : 0)
+            | (context.atClassFrame ? 8 : 0)
+            | (context.atEnumFrame ? 16 : 0)
+            | (context.atInterfaceFrame ? 32 : 0)
+            | (context.underFunction ? 64 : 0)
+            | (this.script.keepsComments() ? 128 : 0)
+            | (this.lazyFunctionBodies ? 256 : 0);
+        return url + "\0" + variant + "\0" + context.classLocalName;
     }
 
     private Ast.DirectiveNode parseUseDirective()
@@ -2787,14 +3102,14 @@ final class UnderlyingParser
             this.expectContextKeyword("namespace");
             drtv = new Ast.UseDefaultDirectiveNode(this.parseExpression());
             this.parseSemicolon();
-            drtv.span = this.popLocation();
+            this.popLocation(drtv);
         }
         else
         {
             this.expectContextKeyword("namespace");
             drtv = new Ast.UseDirectiveNode(this.parseExpression());
             this.parseSemicolon();
-            drtv.span = this.popLocation();
+            this.popLocation(drtv);
         }
         return drtv;
     }
@@ -2843,7 +3158,7 @@ final class UnderlyingParser
         var node = new Ast.ImportDirectiveNode(alias, VectorUtils.join(importName, "."), wildcard);
         node.aliasSpan = aliasSpan;
         node.importNameSpan = this.popLocation();
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -2861,7 +3176,7 @@ final class UnderlyingParser
         context.atPackageFrame = true;
         var block = this.parseBlock(context);
         var node = new Ast.PackageDefinitionNode(id, block);
-        node.span = this.popLocation();
+        this.popLocation(node);
         node.script = this.script;
         return node;
     }
@@ -2934,7 +3249,7 @@ final class UnderlyingParser
             while (this.consume(Token.COMMA));
             this.closeParen();
             var stmt = new Ast.VarStatementNode(readOnly, bindings, this.parseSubstatement(context.duplicate()));
-            stmt.span = this.popLocation();
+            this.popLocation(stmt);
             return stmt;
         }
         else
@@ -2946,7 +3261,7 @@ final class UnderlyingParser
                 var binding = this.parseVarBinding(true);
                 if (context.atEnumFrame && (!(binding.pattern instanceof Ast.NamePatternNode) || binding.pattern.type != null))
                 {
-                    this.reportSyntaxError(Problem.Constants.INVALID_ENUMERATION_CONSTANT, binding.span);
+                    this.reportSyntaxError(Problem.Constants.INVALID_ENUMERATION_CONSTANT, binding.span());
                 }
                 bindings.add(binding);
             }
@@ -2957,26 +3272,26 @@ final class UnderlyingParser
 
             if (node.markStatic() && !context.atClassFrame && !context.atEnumFrame)
             {
-                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("static"));
+                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("static"));
             }
 
             if (node.markOverride())
             {
-                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
             }
 
             if (node.markNative())
             {
-                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
             }
 
             if (node.markFinal())
             {
-                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("final"));
+                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("final"));
             }
 
             if (node.markDynamic())
-                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("dynamic"));
+                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("dynamic"));
 
             return node;
         }
@@ -3035,16 +3350,16 @@ final class UnderlyingParser
 
         if (node.markOverride()  && ((!context.atClassFrame && !context.atEnumFrame) || node.markStatic()))
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
         }
 
         if (node.markNative())
         {
             if (context.atInterfaceFrame)
             {
-                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+                this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
             }
-            if (node.common.body != null)
+            if (node.common.hasBody())
             {
                 this.reportSyntaxError(Problem.Constants.FUNCTION_MUST_NOT_SPECIFY_BODY, node.nameSpan);
             }
@@ -3055,7 +3370,7 @@ final class UnderlyingParser
         }
         else
         {
-            if (node.common.body == null)
+            if (!node.common.hasBody())
             {
                 this.reportSyntaxError(Problem.Constants.FUNCTION_OMITS_BODY, node.nameSpan);
             }
@@ -3063,11 +3378,11 @@ final class UnderlyingParser
 
         if (node.markFinal() && !context.atClassFrame)
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("final"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("final"));
         }
 
         if (node.markDynamic())
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("dynamic"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("dynamic"));
 
         return node;
     }
@@ -3111,7 +3426,7 @@ final class UnderlyingParser
                     {
                         if (optParams != null)
                         {
-                            this.reportSyntaxError(Problem.Constants.ILLEGAL_REQUIRED_PARAM, binding.span);
+                            this.reportSyntaxError(Problem.Constants.ILLEGAL_REQUIRED_PARAM, binding.span());
                         }
                         params = params == null ? new Vector<>() : params;
                         params.add(binding.pattern);
@@ -3124,23 +3439,157 @@ final class UnderlyingParser
         var result = this.consume(Token.COLON) ? this.parseTypeAnnotation(true) : null;
         if (atConstructor && result != null)
         {
-            this.reportSyntaxError(Problem.Constants.CONSTRUCTOR_MUST_NOT_ANNOTATE_RETURN, result.span);
+            this.reportSyntaxError(Problem.Constants.CONSTRUCTOR_MUST_NOT_ANNOTATE_RETURN, result.span());
         }
         this.functionFlagsStack.push(0);
-        var body = this.parseFunctionBody(forFunctionDefinition, atConstructor);
+        var lazyBody = this.lazyFunctionBodies && this.token.type == Token.LBRACE ? this.skipFunctionBody(forFunctionDefinition, atConstructor) : null;
+        var body = lazyBody == null ? this.parseFunctionBody(forFunctionDefinition, atConstructor) : null;
         var flags = this.functionFlagsStack.pop();
         var common = new Ast.FunctionCommonNode(params, optParams, rest, result, body);
-        common.span = this.popLocation();
+        this.popLocation(common);
         common.setMarkYielding((flags & 1) != 0);
+        common.lazyBody = lazyBody;
         return common;
     }
 
+    /*
+     * Skips a function body by tokens, balancing braces. A body using a
+     * construct whose tokens depend on the grammar (a <code>yield</code>, an
+     * include directive, an XML literal or an ambiguous slash) is not skipped:
+     * the parser rewinds and the result is <code>null</code>. Skipped bodies
+     * therefore never yield.
+     */
+    private LazyFunctionBody skipFunctionBody(boolean forFunctionDefinition, boolean atConstructor)
+    {
+        var lazy = new LazyFunctionBody(this, forFunctionDefinition, atConstructor);
+        lazy.index = lexer.index;
+        lazy.offset = lexer.offset;
+        lazy.line = lexer.line;
+        lazy.tokenIndex = lexer.tokenIndex;
+        token.copyTo(lazy.openBrace);
+        previousToken.copyTo(lazy.previousToken);
+
+        var invalidated = script.invalidated();
+        int mark = this.checkpoint();
+        try
+        {
+            if (this.skipBalancedBraces())
+            {
+                this.releaseCheckpoint(mark);
+                this.semicolonInserted = true;
+                script.setSkippedFunctionBodies();
+                return lazy;
+            }
+        }
+        catch (Problem problem)
+        {
+        }
+        this.rollback(mark);
+        script.setInvalidated(invalidated);
+        return null;
+    }
+
+    private boolean skipBalancedBraces()
+    {
+        int depth = 0;
+        boolean operandEnded = false;
+        Token previousType = null;
+        skippedParens.setLength(0);
+        for (;;)
+        {
+            var type = this.token.type;
+            if (type == Token.EOF || type == Token.YIELD || (type == Token.IDENTIFIER && this.token.stringValue.equals("include")))
+            {
+                return false;
+            }
+            if ((type == Token.SLASH || type == Token.DIVIDE_ASSIGN || type == Token.LT) && !operandEnded)
+            {
+                if (type == Token.LT || previousType == Token.RBRACE)
+                {
+                    return false;
+                }
+                this.lexer.scanRegExpLiteral();
+                type = Token.REG_EXP_LITERAL;
+            }
+            switch (type)
+            {
+                case LBRACE:
+                    ++depth;
+                    operandEnded = false;
+                    break;
+                case RBRACE:
+                    if (--depth == 0)
+                    {
+                        this.next();
+                        return true;
+                    }
+                    operandEnded = false;
+                    break;
+                case LPAREN:
+                    skippedParens.push(previousType == Token.IF || previousType == Token.WHILE || previousType == Token.FOR || previousType == Token.WITH ? 1 : 0);
+                    operandEnded = false;
+                    break;
+                case RPAREN:
+                    operandEnded = skippedParens.pop() == 0;
+                    break;
+                case IDENTIFIER:
+                case STRING_LITERAL:
+                case BOOLEAN_LITERAL:
+                case NUMERIC_LITERAL:
+                case NULL_LITERAL:
+                case THIS_LITERAL:
+                case REG_EXP_LITERAL:
+                case RBRACKET:
+                case INCREMENT:
+                case DECREMENT:
+                    operandEnded = true;
+                    break;
+                default:
+                    // a reserved word after a dot is a property name
+                    operandEnded = type.isKeyword() && previousType == Token.DOT;
+            }
+            previousType = type;
+            this.next();
+        }
+    }
+
+    /*
+     * Parses a body skipped by <code>skipFunctionBody()</code>, resuming the
+     * lexer at its opening brace. The script already holds the line starts
+     * and comments of the body, so the lexer does not record them again.
+     */
+    Ast.Node parseLazyFunctionBody(LazyFunctionBody lazy)
+    {
+        lexer.index = lazy.index;
+        lexer.offset = lazy.offset;
+        lexer.line = lazy.line;
+        lexer.mode = Lexer.Mode.NORMAL;
+        lexer.tokenIndex = lazy.tokenIndex;
+        lexer.rescan = Lexer.RESCAN_NONE;
+        lazy.openBrace.copyTo(token);
+        lazy.previousToken.copyTo(previousToken);
+        this.clearState();
+        this.functionFlagsStack.push(0);
+        try
+        {
+            return this.parseFunctionBody(lazy.forFunctionDefinition, lazy.atConstructor);
+        }
+        catch (Problem problem)
+        {
+            return null;
+        }
+        finally
+        {
+            this.clearState();
+        }
+    }
+
     public Ast.TypeIdNode parseTypedIdentifier()
     {
         this.markLocation();
         var str = this.expectIdentifier();
         var node = new Ast.TypeIdNode(str, this.consume(Token.COLON) ? this.parseTypeAnnotation() : null);
-        node.span = this.popLocation();
+        this.popLocation(node);
         return node;
     }
 
@@ -3194,26 +3643,26 @@ final class UnderlyingParser
 
         if (node.markStatic() && !context.atClassFrame && !context.atEnumFrame)
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("static"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("static"));
         }
 
         if (node.markOverride())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
         }
 
         if (node.markNative())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
         }
 
         if (node.markFinal())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("final"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("final"));
         }
 
         if (node.markDynamic())
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("dynamic"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("dynamic"));
 
         return node;
     }
@@ -3233,24 +3682,24 @@ final class UnderlyingParser
 
         if (node.markStatic())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("static"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("static"));
         }
 
         if (node.markOverride())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
         }
 
         if (node.markNative())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
         }
 
         if (node.markFinal())
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("final"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("final"));
 
         if (node.markDynamic())
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("dynamic"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("dynamic"));
 
         return node;
     }
@@ -3299,17 +3748,17 @@ final class UnderlyingParser
 
         if (node.markStatic())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("static"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("static"));
         }
 
         if (node.markOverride())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
         }
 
         if (node.markNative())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
         }
 
         return node;
@@ -3355,32 +3804,32 @@ final class UnderlyingParser
         {
             if (!(drtv instanceof Ast.FunctionDefinitionNode || drtv instanceof Ast.ClassDefinitionNode || drtv instanceof Ast.InterfaceDefinitionNode || drtv instanceof Ast.EnumDefinitionNode))
             {
-                this.reportSyntaxError(Problem.Constants.DIRECTIVE_NOT_ALLOWED_IN_INTERFACE, drtv.span);
+                this.reportSyntaxError(Problem.Constants.DIRECTIVE_NOT_ALLOWED_IN_INTERFACE, drtv.span());
             }
         }
 
         if (node.markStatic())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("static"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("static"));
         }
 
         if (node.markOverride())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
         }
 
         if (node.markNative())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
         }
 
         if (node.markFinal())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("final"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("final"));
         }
 
         if (node.markDynamic())
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("dynamic"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("dynamic"));
 
         return node;
     }
@@ -3401,33 +3850,33 @@ final class UnderlyingParser
 
         if (node.markStatic())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("static"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("static"));
         }
 
         if (node.markOverride())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("override"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("override"));
         }
 
         if (node.markNative())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("native"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("native"));
         }
 
         if (node.markFinal())
         {
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("final"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("final"));
         }
 
         if (node.markDynamic())
-            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span, Problem.Argument.createQuote("dynamic"));
+            this.reportSyntaxError(Problem.Constants.ATTRIBUTE_UNALLOWED_FOR_DEFINITION, node.span(), Problem.Argument.createQuote("dynamic"));
 
         return node;
     }
 
     private void completeDefinition(Ast.DefinitionNode node, AttributeData attributeData)
     {
-        node.span = this.popLocation();
+        this.popLocation(node);
         node.accessModifier = attributeData.qualifier;
         node.metaDataArray = attributeData.metaData;
         node.setMarkFinal(attributeData.finalModifier);
@@ -3437,14 +3886,128 @@ final class UnderlyingParser
         node.setMarkDynamic(attributeData.dynamicModifier);
     }
 
-    public Ast.ProgramNode parseProgram()
+    /*
+     * Moves the parser to an index of its script, as if a token ending there
+     * at the given line had just been consumed.
+     */
+    void restart(int index, int line)
     {
-        this.markLocation();
-        var packages = new Vector<Ast.PackageDefinitionNode>();
-        while (this.token.type == Token.PACKAGE)
+        this.lexer.reset(index, line);
+        this.previousToken.start = index;
+        this.previousToken.end = index;
+        this.previousToken.firstLine = line;
+        this.previousToken.lastLine = line;
+        this.clearState();
+        try
+        {
+            this.lexer.shift();
+        }
+        catch (Problem exc)
+        {
+        }
+    }
+
+    /*
+     * Parses the top-level packages and directives of an edited region for
+     * <code>Parser.reparse()</code>, from the current token up to the first
+     * token at index <code>end</code>, or up to the end of the script if
+     * <code>end</code> is -1. The result is null if the region does not end
+     * exactly there as it would within the whole program, or if it has an
+     * include directive.
+     */
+    Vector<Ast.Node> parseProgramRegion(boolean atPackages, int end)
+    {
+        var items = new Vector<Ast.Node>();
+        try
+        {
+            if (atPackages)
+            {
+                items.addAll(this.parsePackageDefinitions(end));
+            }
+            var context = new Parser.Context();
+            context.atTopLevelProgram = true;
+            var directives = this.parseOptDirectives(context, end);
+            for (var drtv : directives)
+            {
+                if (drtv instanceof Ast.IncludeDirectiveNode)
+                {
+                    return null;
+                }
+            }
+            items.addAll(directives);
+            if (end == -1)
+            {
+                return this.token.type == Token.EOF ? items : null;
+            }
+            return this.token.start == end && (directives.size() == 0 || this.semicolonInserted || this.token.type == Token.SEMICOLON) ? items : null;
+        }
+        catch (Problem exc)
+        {
+            return null;
+        }
+        finally
         {
-            packages.add(this.parsePackageDefinition());
+            this.clearState();
         }
+    }
+
+    /*
+     * Parses the block of a definition again for <code>Parser.reparse()</code>,
+     * from its opening brace at the current token, in the context that the
+     * definition gives it. The owner is the function, class, enum or package
+     * holding the block. The result is null if the block does not end at
+     * index <code>end</code>, or if a function body starts or stops
+     * yielding.
+     */
+    Ast.BlockNode parseBlockRegion(Ast.Node owner, boolean atConstructor, int end)
+    {
+        var context = new Parser.Context();
+        if (owner instanceof Ast.FunctionCommonNode)
+        {
+            context.underFunction = true;
+            context.atConstructorBlock = atConstructor;
+            this.functionFlagsStack.push(0);
+        }
+        else if (owner instanceof Ast.ClassDefinitionNode)
+        {
+            context.atClassFrame = true;
+            context.classLocalName = ((Ast.ClassDefinitionNode) owner).name;
+        }
+        else if (owner instanceof Ast.EnumDefinitionNode)
+        {
+            context.atEnumFrame = true;
+        }
+        else
+        {
+            context.atPackageFrame = true;
+        }
+        try
+        {
+            var block = this.parseBlock(context);
+            if (block.end() != end)
+            {
+                return null;
+            }
+            if (owner instanceof Ast.FunctionCommonNode && ((this.functionFlags() & 1) != 0) != ((Ast.FunctionCommonNode) owner).markYielding())
+            {
+                return null;
+            }
+            return block;
+        }
+        catch (Problem exc)
+        {
+            return null;
+        }
+        finally
+        {
+            this.clearState();
+        }
+    }
+
+    public Ast.ProgramNode parseProgram()
+    {
+        this.markLocation();
+        var packages = this.parsePackageDefinitions(-1);
         var context = new Parser.Context();
         context.atTopLevelProgram = true;
 
@@ -3469,7 +4032,7 @@ final class UnderlyingParser
                 break;
             }
         }
-        var directives = this.parseOptDirectives(context);
+        var directives = this.parseOptDirectives(context, -1);
         if (topIncludings != null)
         {
             for (var i = topIncludings.size(); --i != -1;)
@@ -3482,7 +4045,7 @@ final class UnderlyingParser
             var drtv2 = this.parseOptDirectives(context);
             if (drtv2.size() != 0)
             {
-                var span = drtv2.get(0).span;
+                var span = drtv2.get(0).span();
                 this.reportSyntaxError(Problem.Constants.EXPECTING_BEFORE, Span.pointer(span.firstLine(), span.start()), Problem.Argument.createToken(Token.SEMICOLON), Problem.Argument.createTerm("directive"));
             }
             else
@@ -3493,7 +4056,7 @@ final class UnderlyingParser
         }
         var program = new Ast.ProgramNode(packages, directives);
         program.script = this.script;
-        program.span = this.popLocation();
+        this.popLocation(program);
         return program;
     }
 }
\ No newline at end of file
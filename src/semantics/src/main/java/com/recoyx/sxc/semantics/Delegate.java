@@ -15,6 +15,27 @@ public final class Delegate
     private Symbol _ownFilterProxy;
     private HashMap<Operator, Symbol> _ownOperators;
 
+    /*
+     * Version of the last change to the own names or inheritance of the
+     * delegate, from the pool.
+     */
+    private long _version;
+
+    /*
+     * Symbols found by lookupName(), and by multi-name and reserved
+     * namespace lookups, null for names that are not members. They are
+     * valid while no delegate of the inheritance chain changes, that is,
+     * while the greatest version along the chain stays the same. That
+     * version is looked for again only after the pool's version moves.
+     * Instantiated members are kept by origin member, so that each is
+     * replaced once.
+     */
+    private HashMap<Symbol, Symbol> _members;
+    private HashMap<MemberKey, Symbol> _keyedMembers;
+    private long _membersVersion;
+    private long _membersPoolVersion = -1;
+    private HashMap<Symbol, Symbol> _instantiatedMembers;
+
     public Delegate(Symbol type)
     {
         _type = type;
@@ -38,6 +59,12 @@ public final class Delegate
     public void setInherit(Delegate delegate)
     {
         _inherit = delegate;
+        membersChanged();
+        var pool = pool();
+        if (pool != null)
+        {
+            pool.typeHierarchyChanged();
+        }
     }
 
     public Names ownNames()
@@ -48,6 +75,61 @@ public final class Delegate
     public void setOwnNames(Names names)
     {
         _ownNames = names;
+        if (names != null)
+        {
+            names.setDelegate(this);
+        }
+        membersChanged();
+    }
+
+    /*
+     * Gives the delegate a new version, which drops its member cache and
+     * those of the delegates inheriting from it.
+     */
+    void membersChanged()
+    {
+        var pool = pool();
+        if (pool != null)
+        {
+            _version = pool.nextMembersVersion();
+        }
+    }
+
+    /*
+     * Drops the member caches if a delegate of the chain changed since they
+     * were filled.
+     */
+    private void validateMembers(SymbolPool pool)
+    {
+        long poolVersion = pool.membersVersion();
+        if (_membersPoolVersion == poolVersion)
+        {
+            return;
+        }
+        _membersPoolVersion = poolVersion;
+        long version = chainVersion();
+        if (_membersVersion != version)
+        {
+            _membersVersion = version;
+            if (_members != null)
+            {
+                _members.clear();
+            }
+            if (_keyedMembers != null)
+            {
+                _keyedMembers.clear();
+            }
+        }
+    }
+
+    private long chainVersion()
+    {
+        long version = 0;
+        for (var delegate = this; delegate != null; delegate = delegate._inherit)
+        {
+            version = Math.max(version, delegate._version);
+        }
+        return version;
     }
 
     public ProxyPropertyTrait ownProxyPropertyTrait()
@@ -91,37 +173,118 @@ public final class Delegate
     }
 
     public Symbol lookupName(Symbol name)
+    {
+        var pool = pool();
+        if (pool == null)
+        {
+            return resolveName(name);
+        }
+        validateMembers(pool);
+        if (_members == null)
+        {
+            _members = new HashMap<>();
+        }
+        var symbol = _members.get(name);
+        if (symbol == null && !_members.containsKey(name))
+        {
+            symbol = resolveName(name);
+            _members.put(name, symbol);
+        }
+        return symbol;
+    }
+
+    private Symbol resolveName(Symbol name)
     {
         Symbol symbol = null;
         if (type().kind() == SymbolKind.INSTANTIATED_TYPE)
         {
             symbol = inherit().lookupName(name);
-            return symbol != null ? symbol.replaceType(type()) : null;
+            return symbol != null ? instantiate(symbol) : null;
         }
         symbol = ownNames() != null ? ownNames().lookupName(name) : null;
         return (symbol != null ? symbol : inherit() != null ? inherit().lookupName(name) : null);
     }
 
+    private Symbol instantiate(Symbol symbol)
+    {
+        if (_instantiatedMembers == null)
+        {
+            _instantiatedMembers = new HashMap<>();
+        }
+        var r = _instantiatedMembers.get(symbol);
+        if (r == null)
+        {
+            r = symbol.replaceType(type());
+            _instantiatedMembers.put(symbol, r);
+        }
+        return r;
+    }
+
     public Symbol lookupMultiName(Vector<Symbol> namespaces, String localName)
         throws AmbiguousReferenceError
+    {
+        var pool = pool();
+        if (pool == null)
+        {
+            return resolveMultiName(namespaces, localName);
+        }
+        var key = MemberKey.multiName(namespaces, localName);
+        var symbol = keyedMember(pool, key);
+        if (symbol == null && !_keyedMembers.containsKey(key))
+        {
+            symbol = resolveMultiName(namespaces, localName);
+            _keyedMembers.put(key, symbol);
+        }
+        return symbol;
+    }
+
+    private Symbol keyedMember(SymbolPool pool, MemberKey key)
+    {
+        validateMembers(pool);
+        if (_keyedMembers == null)
+        {
+            _keyedMembers = new HashMap<>();
+        }
+        return _keyedMembers.get(key);
+    }
+
+    private Symbol resolveMultiName(Vector<Symbol> namespaces, String localName)
+        throws AmbiguousReferenceError
     {
         Symbol symbol = null;
         if (type().kind() == SymbolKind.INSTANTIATED_TYPE)
         {
             symbol = inherit().lookupMultiName(namespaces, localName);
-            return symbol != null ? symbol.replaceType(type()) : null;
+            return symbol != null ? instantiate(symbol) : null;
         }
         symbol = ownNames() != null ? ownNames().lookupMultiName(namespaces, localName) : null;
         return (symbol != null ? symbol : inherit() != null ? inherit().lookupMultiName(namespaces, localName) : null);
     }
 
     public Symbol lookupReservedNamespaceName(SymbolKind namespaceKind, String localName)
+    {
+        var pool = pool();
+        if (pool == null)
+        {
+            return resolveReservedNamespaceName(namespaceKind, localName);
+        }
+        var key = MemberKey.reservedNamespace(namespaceKind, localName);
+        var symbol = keyedMember(pool, key);
+        if (symbol == null && !_keyedMembers.containsKey(key))
+        {
+            symbol = resolveReservedNamespaceName(namespaceKind, localName);
+            _keyedMembers.put(key, symbol);
+        }
+        return symbol;
+    }
+
+    private Symbol resolveReservedNamespaceName(SymbolKind namespaceKind, String localName)
     {
         Symbol symbol = null;
         if (type().kind() == SymbolKind.INSTANTIATED_TYPE)
         {
             symbol = inherit().lookupReservedNamespaceName(namespaceKind, localName);
-            return symbol != null ? symbol.replaceType(type()) : null;
+            return symbol != null ? instantiate(symbol) : null;
         }
         for (NamePair p : ownNames())
         {
@@ -0,0 +1,82 @@
+package com.recoyx.sxc.semantics;
+
+import java.util.Vector;
+
+/*
+ * Key of a multi-name or reserved namespace lookup in a delegate's member
+ * cache. The namespace list is copied, as callers keep changing their open
+ * namespaces; namespaces are compared by identity, in order, and a null
+ * list is kept apart from an empty one. Local names of reserved namespace
+ * lookups are compared by identity, as the lookup does. The hash is
+ * computed once.
+ */
+final class MemberKey
+{
+    static private final int MULTI_NAME = 0;
+    static private final int ANY_NAMESPACE = 1;
+    static private final int RESERVED_NAMESPACE = 2;
+
+    private final int _form;
+    private final String _localName;
+    private final Symbol[] _namespaces;
+    private final int _hash;
+
+    private MemberKey(int form, String localName, Symbol[] namespaces)
+    {
+        int hash = form * 31 + (form >= RESERVED_NAMESPACE ? System.identityHashCode(localName) : localName.hashCode());
+        for (var namespace : namespaces)
+        {
+            hash = hash * 31 + System.identityHashCode(namespace);
+        }
+        _form = form;
+        _localName = localName;
+        _namespaces = namespaces;
+        _hash = hash ^ (hash >>> 16);
+    }
+
+    static public MemberKey multiName(Vector<Symbol> namespaces, String localName)
+    {
+        if (namespaces == null)
+        {
+            return new MemberKey(ANY_NAMESPACE, localName, new Symbol[0]);
+        }
+        return new MemberKey(MULTI_NAME, localName, namespaces.toArray(new Symbol[namespaces.size()]));
+    }
+
+    static public MemberKey reservedNamespace(SymbolKind namespaceKind, String localName)
+    {
+        return new MemberKey(RESERVED_NAMESPACE + namespaceKind.ordinal(), localName, new Symbol[0]);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _hash;
+    }
+
+    @Override
+    public boolean equals(Object object)
+    {
+        if (!(object instanceof MemberKey))
+        {
+            return false;
+        }
+        var key = (MemberKey) object;
+        if (key._hash != _hash || key._form != _form || key._namespaces.length != _namespaces.length)
+        {
+            return false;
+        }
+        if (_form >= RESERVED_NAMESPACE ? key._localName != _localName : !key._localName.equals(_localName))
+        {
+            return false;
+        }
+        for (int i = 0; i != _namespaces.length; ++i)
+        {
+            if (key._namespaces[i] != _namespaces[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
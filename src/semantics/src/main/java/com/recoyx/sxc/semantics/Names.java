@@ -1,118 +1,166 @@
 package com.recoyx.sxc.semantics;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Vector;
 import com.recoyx.sxc.semantics.errors.*;
 
+/**
+ * Names defined in a scope, in definition order. Names are looked up by
+ * identity through an open-addressing table, and multi-names through the
+ * chain of names sharing a local name.
+ */
 public final class Names implements Iterable<NamePair>
 {
-    private Vector<Symbol> _keys = new Vector<>();
-    private Vector<Symbol> _values = new Vector<>();
+    static private final int INITIAL_CAPACITY = 4;
+
+    private int _length = 0;
+    private Symbol[] _keys;
+    private Symbol[] _values;
+
+    /*
+     * Next name with the same local name in definition order, or -1.
+     */
+    private int[] _sameLocalName;
+
+    /*
+     * Slots hold an index plus one, or 0 when free. There are at least
+     * twice as many slots as names.
+     */
+    private int[] _slots;
+    private int[] _localNameSlots;
+
+    /*
+     * Delegate whose own names these are, told of changes.
+     */
+    private Delegate _delegate;
 
     public Names()
     {
     }
 
+    void setDelegate(Delegate delegate)
+    {
+        _delegate = delegate;
+    }
+
     public void defineName(Symbol key, Symbol value)
     {
-        if (!_keys.contains(key))
+        if (find(key) != -1)
+        {
+            return;
+        }
+        if (_keys == null)
+        {
+            allocate(INITIAL_CAPACITY);
+        }
+        else if (_length == _keys.length)
         {
-            _keys.add(key);
-            _values.add(value);
+            allocate(_keys.length << 1);
+        }
+        int i = _length++;
+        _keys[i] = key;
+        _values[i] = value;
+        index(i);
+        if (_delegate != null)
+        {
+            _delegate.membersChanged();
         }
     }
 
     public boolean deleteName(Symbol key)
     {
-        int i = _keys.indexOf(key);
+        int i = find(key);
         if (i == -1)
         {
             return false;
         }
-        _keys.remove(i);
-        _values.remove(i);
+        --_length;
+        System.arraycopy(_keys, i + 1, _keys, i, _length - i);
+        System.arraycopy(_values, i + 1, _values, i, _length - i);
+        _keys[_length] = null;
+        _values[_length] = null;
+        reindex();
+        if (_delegate != null)
+        {
+            _delegate.membersChanged();
+        }
         return true;
     }
 
     public boolean hasName(Symbol key)
     {
-        return _keys.contains(key);
+        return find(key) != -1;
     }
 
     public int length()
     {
-        return _values.size();
+        return _length;
     }
 
     public Symbol resolveIndex(int index)
     {
-        return index < _values.size() ? _values.get(index) : null;
+        return index < _length ? _values[index] : null;
     }
 
     public int indexOf(Symbol symbol)
     {
-        return symbol.kind() == SymbolKind.NAME ? _keys.indexOf(symbol) : _values.indexOf(symbol);
+        if (symbol.kind() == SymbolKind.NAME)
+        {
+            return find(symbol);
+        }
+        for (int i = 0; i != _length; ++i)
+        {
+            if (_values[i] == symbol)
+            {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public Symbol lookupName(Symbol name)
     {
-        int i = _keys.indexOf(name);
-        return i == -1 ? null : _values.get(i);
+        int i = find(name);
+        return i == -1 ? null : _values[i];
     }
 
     public Symbol lookupMultiName(Vector<Symbol> namespaces, String localName)
         throws AmbiguousReferenceError
     {
-        int i = 0,
-            r = -1,
-            l = _keys.size();
-        boolean found = false;
-        Symbol leading_ns = null;
-
-        if (namespaces == null)
+        int first = findLocalName(localName);
+        if (first == -1)
         {
-            for (; i != l; ++i)
-            {
-                if (_keys.get(i).localName().equals(localName))
-                {
-                    return _values.get(i);
-                }
-            }
-
             return null;
         }
+        if (namespaces == null)
+        {
+            return _values[first];
+        }
+
+        int r = -1;
+        Symbol leading_ns = null;
 
         for (var j = namespaces.size(); --j != -1;)
         {
             var ns = namespaces.get(j);
-            for (i = 0; i != l; ++i)
+            for (int i = first; i != -1; i = _sameLocalName[i])
             {
-                Symbol name = _keys.get(i);
-                if (name.localName().equals(localName))
+                if (_keys[i].namespace() == ns && leading_ns != ns)
                 {
-                    found = true;
-                    if (name.namespace() == ns && leading_ns != ns)
+                    if (r == -1)
+                    {
+                        r = i;
+                        leading_ns = ns;
+                    }
+                    else
                     {
-                        if (r == -1)
-                        {
-                            r = i;
-                            leading_ns = ns;
-                        }
-                        else
-                        {
-                            throw new AmbiguousReferenceError(localName);
-                        }
+                        throw new AmbiguousReferenceError(localName);
                     }
-                    continue;
                 }
             }
-            if (!found)
-            {
-                break;
-            }
         }
-        return r == -1 ? null : _values.get(r);
+        return r == -1 ? null : _values[r];
     }
 
     public Iterator<NamePair> iterator()
@@ -128,7 +176,7 @@ public final class Names implements Iterable<NamePair>
         public NamesIterator()
         {
             i = 0;
-            l = _values.size();
+            l = _length;
         }
 
         public boolean hasNext()
@@ -138,7 +186,112 @@ public final class Names implements Iterable<NamePair>
 
         public NamePair next()
         {
-            return new NamePair(_keys.get(i), _values.get(i++));
+            return new NamePair(_keys[i], _values[i++]);
+        }
+    }
+
+    static private int mix(int hash)
+    {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private int find(Symbol key)
+    {
+        if (_length == 0)
+        {
+            return -1;
+        }
+        int mask = _slots.length - 1;
+        for (int s = mix(System.identityHashCode(key)) & mask;; s = (s + 1) & mask)
+        {
+            int slot = _slots[s];
+            if (slot == 0)
+            {
+                return -1;
+            }
+            if (_keys[slot - 1] == key)
+            {
+                return slot - 1;
+            }
+        }
+    }
+
+    /*
+     * First name with a local name, or -1.
+     */
+    private int findLocalName(String localName)
+    {
+        if (_length == 0)
+        {
+            return -1;
+        }
+        int mask = _localNameSlots.length - 1;
+        for (int s = mix(localName.hashCode()) & mask;; s = (s + 1) & mask)
+        {
+            int slot = _localNameSlots[s];
+            if (slot == 0)
+            {
+                return -1;
+            }
+            if (_keys[slot - 1].localName().equals(localName))
+            {
+                return slot - 1;
+            }
+        }
+    }
+
+    private void index(int i)
+    {
+        var key = _keys[i];
+        int mask = _slots.length - 1;
+        int s = mix(System.identityHashCode(key)) & mask;
+        while (_slots[s] != 0)
+        {
+            s = (s + 1) & mask;
+        }
+        _slots[s] = i + 1;
+
+        _sameLocalName[i] = -1;
+        var localName = key.localName();
+        for (s = mix(localName.hashCode()) & mask;; s = (s + 1) & mask)
+        {
+            int slot = _localNameSlots[s];
+            if (slot == 0)
+            {
+                _localNameSlots[s] = i + 1;
+                return;
+            }
+            int j = slot - 1;
+            if (_keys[j].localName().equals(localName))
+            {
+                while (_sameLocalName[j] != -1)
+                {
+                    j = _sameLocalName[j];
+                }
+                _sameLocalName[j] = i;
+                return;
+            }
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        _keys = _keys == null ? new Symbol[capacity] : Arrays.copyOf(_keys, capacity);
+        _values = _values == null ? new Symbol[capacity] : Arrays.copyOf(_values, capacity);
+        _sameLocalName = new int[capacity];
+        _slots = new int[capacity << 1];
+        _localNameSlots = new int[capacity << 1];
+        reindex();
+    }
+
+    private void reindex()
+    {
+        Arrays.fill(_slots, 0);
+        Arrays.fill(_localNameSlots, 0);
+        for (int i = 0; i != _length; ++i)
+        {
+            index(i);
         }
     }
-}
\ No newline at end of file
+}
@@ -80,13 +80,16 @@ public final class SymbolPool
     public HashMap<Symbol, Vector<Symbol>> typeInstantiations = null;
 
     private final HashMap<Symbol, Vector<Symbol>> _typeInstantiations = new HashMap<>();
-    private final Vector<Vector<Symbol>> _functionTypes = new Vector<>();
-    private final Vector<Vector<Symbol>> _tupleTypes = new Vector<>();
+    private final HashMap<TypeKey, Symbol> _structuralTypes = new HashMap<>();
     private final Vector<Vector<Symbol>> _unionTypes = new Vector<>();
     private final HashMap<Symbol, Symbol> _nullableTypes = new HashMap<>();
     private final HashMap<Symbol, HashMap<Symbol, Symbol>> _instantiatedSymbols = new HashMap<>();
     private final HashMap<ProxyPropertyTrait, HashMap<Symbol, ProxyPropertyTrait>> _instantiatedTraits = new HashMap<>();
-    private final Vector<Vector<Symbol>> _names = new Vector<>();
+    private final HashMap<Symbol, HashMap<String, Symbol>> _names = new HashMap<>();
+    private int _numNames = 0;
+    private boolean _typeHierarchyFinished = false;
+    private long _typeHierarchyVersion = 0;
+    private long _membersVersion = 0;
     private final HashMap<String, Symbol> _uriNamespaces = new HashMap<>();
     private final HashMap<String, Symbol> _packages = new HashMap<>();
 
@@ -305,24 +308,80 @@ public final class SymbolPool
 
     public Symbol createName(Symbol namespace, String localName)
     {
-        for (int i = _names.size(); i < localName.length(); ++i)
+        var names = _names.get(namespace);
+        if (names == null)
         {
-            _names.add(new Vector<>());
+            _names.put(namespace, names = new HashMap<>());
         }
-        var list = _names.get(localName.length() - 1);
-        for (var name : list)
+        var name = names.get(localName);
+        if (name == null)
         {
-            if (name.localName().equals(localName) && name.namespace() == namespace)
-            {
-                return name;
-            }
+            name = new SxcName(namespace, localName);
+            name._pool = this;
+            names.put(localName, name);
+            ++_numNames;
         }
-        Symbol name = new SxcName(namespace, localName);
-        name._pool = this;
-        list.add(name);
         return name;
     }
 
+    /**
+     * Indicates whether base classes and interfaces of types are final.
+     * While they are, subtype queries use sets of supertypes built once for
+     * each type; until then they walk the hierarchy, so that resolving it
+     * builds no sets.
+     */
+    public boolean isTypeHierarchyFinished()
+    {
+        return _typeHierarchyFinished;
+    }
+
+    /**
+     * To be called once base classes and interfaces are resolved.
+     */
+    public void setTypeHierarchyFinished(boolean value)
+    {
+        _typeHierarchyFinished = value;
+        ++_typeHierarchyVersion;
+    }
+
+    /**
+     * Discards the sets of supertypes that subtype queries build for each
+     * type once the hierarchy is finished. Changing a base class and
+     * <code>implement()</code> call it; code editing lists of implemented or
+     * super interfaces directly must call it as well.
+     */
+    public void typeHierarchyChanged()
+    {
+        ++_typeHierarchyVersion;
+    }
+
+    long typeHierarchyVersion()
+    {
+        return _typeHierarchyVersion;
+    }
+
+    /*
+     * Version given to a delegate whose names or inheritance change,
+     * greater than those given before.
+     */
+    long nextMembersVersion()
+    {
+        return ++_membersVersion;
+    }
+
+    long membersVersion()
+    {
+        return _membersVersion;
+    }
+
+    /**
+     * Number of names created by the pool.
+     */
+    public int numNames()
+    {
+        return _numNames;
+    }
+
     public Symbol createReservedNamespace(String type, Symbol definitionPackage)
     {
         var ns = new ReservedNamespace(type, definitionPackage);
@@ -506,113 +565,39 @@ public final class SymbolPool
             return origin;
         }
 
-        int l = arguments.size();
-        var list = _typeInstantiations.get(origin);
-        if (list == null)
+        var key = TypeKey.instantiated(origin, arguments);
+        type = _structuralTypes.get(key);
+        if (type != null)
         {
-            _typeInstantiations.put(origin, list = new Vector<>());
+            return type;
         }
 
-        search:
-        for (var type2 : list)
+        var list = _typeInstantiations.get(origin);
+        if (list == null)
         {
-            var arguments2 = type2.arguments();
-            for (i = 0; i != l; ++i)
-            {
-                if (arguments2.get(i) != arguments.get(i))
-                {
-                    continue search;
-                }
-            }
-            return type2;
+            _typeInstantiations.put(origin, list = new Vector<>());
         }
 
         type = new Types.InstantiatedType(origin, arguments);
         type._pool = this;
         list.add(type);
+        _structuralTypes.put(key, type);
         return type;
     }
 
     public Symbol createFunctionType(Vector<Symbol> params, Vector<Symbol> optParams, boolean rest, Symbol result)
     {
-        Symbol type = null;
-
-        int i = 0;
-        int l1 = params != null ? params.size() : 0;
-        int l2 = optParams != null ? optParams.size() : 0;
-
-        if (l1 >= _functionTypes.size())
-        {
-            for (i = _functionTypes.size(); i <= l1; ++i)
-            {
-                _functionTypes.add(new Vector<>());
-            }
-        }
-
-        var list = _functionTypes.get(l1);
-
-        search:
-        for (var type2 : list)
+        var key = TypeKey.function(params, optParams, rest, result);
+        Symbol type = _structuralTypes.get(key);
+        if (type != null)
         {
-            var params2 = type2.params();
-            if (params2 != null)
-            {
-                if (params == null)
-                {
-                    continue search;
-                }
-                for (i = 0; i != l1; ++i)
-                {
-                    if (params.get(i) != params2.get(i))
-                    {
-                        continue search;
-                    }
-                }
-            }
-            else if (params != null)
-            {
-                continue search;
-            }
-
-            var optParams2 = type2.optParams();
-            if (optParams2 != null)
-            {
-                if (optParams == null || optParams.size() != optParams2.size())
-                {
-                    continue search;
-                }
-                for (i = 0; i != l2; ++i)
-                {
-                    if (optParams.get(i) != optParams2.get(i))
-                    {
-                        continue search;
-                    }
-                }
-            }
-            else if (optParams != null)
-            {
-                continue search;
-            }
-
-            var rest2 = type2.rest();
-            if (rest2)
-            {
-                if (!rest)
-                    continue search;
-            }
-            else if (rest)
-                continue search;
-
-            if (type2.result() == result)
-            {
-                return type2;
-            }
+            return type;
         }
 
         type = new Types.FunctionType(params, optParams, rest, result);
         type._pool = this;
         type.setDelegate(objectType != null ? objectType.delegate() : null);
-        list.add(type);
+        _structuralTypes.put(key, type);
         return type;
     }
 
@@ -628,38 +613,17 @@ public final class SymbolPool
 
     public Symbol createTupleType(Vector<Symbol> elements)
     {
-        Symbol type = null;
-        int i = 0;
-        int l = elements.size();
-
-        if (l > _tupleTypes.size())
-        {
-            for (i = _tupleTypes.size(); i < l; ++i)
-            {
-                _tupleTypes.add(new Vector<>());
-            }
-        }
-
-        var list = _tupleTypes.get(l - 1);
-
-        search:
-        for (var type2 : list)
+        var key = TypeKey.tuple(elements);
+        Symbol type = _structuralTypes.get(key);
+        if (type != null)
         {
-            var elements2 = type2.tupleElements();
-            for (i = 0; i != l; ++i)
-            {
-                if (elements.get(i) != elements2.get(i))
-                {
-                    continue search;
-                }
-            }
-            return type2;
+            return type;
         }
 
         type = new Types.TupleType(elements);
         type._pool = this;
         type.setDelegate(objectType != null ? objectType.delegate() : null);
-        list.add(type);
+        _structuralTypes.put(key, type);
         return type;
     }
 
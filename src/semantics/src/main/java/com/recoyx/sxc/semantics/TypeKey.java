@@ -0,0 +1,98 @@
+package com.recoyx.sxc.semantics;
+
+import java.util.Vector;
+
+/*
+ * Key of a structural type in a symbol pool. Components are compared by
+ * identity; function types also record their parameter count, which
+ * parameter lists are null and whether they take a rest parameter. The
+ * hash is computed once.
+ */
+final class TypeKey
+{
+    static private final int INSTANTIATED = 0;
+    static private final int FUNCTION = 1;
+    static private final int TUPLE = 2;
+
+    private final int _form;
+    private final Symbol[] _components;
+    private final int _hash;
+
+    private TypeKey(int form, Symbol[] components)
+    {
+        int hash = form;
+        for (var component : components)
+        {
+            hash = hash * 31 + System.identityHashCode(component);
+        }
+        _form = form;
+        _components = components;
+        _hash = hash ^ (hash >>> 16);
+    }
+
+    static public TypeKey instantiated(Symbol origin, Vector<Symbol> arguments)
+    {
+        var components = new Symbol[arguments.size() + 1];
+        components[0] = origin;
+        for (int i = 0; i != arguments.size(); ++i)
+        {
+            components[i + 1] = arguments.get(i);
+        }
+        return new TypeKey(INSTANTIATED, components);
+    }
+
+    static public TypeKey function(Vector<Symbol> params, Vector<Symbol> optParams, boolean rest, Symbol result)
+    {
+        int l1 = params != null ? params.size() : 0;
+        int l2 = optParams != null ? optParams.size() : 0;
+        var components = new Symbol[l1 + l2 + 1];
+        components[0] = result;
+        for (int i = 0; i != l1; ++i)
+        {
+            components[i + 1] = params.get(i);
+        }
+        for (int i = 0; i != l2; ++i)
+        {
+            components[l1 + i + 1] = optParams.get(i);
+        }
+        int form = FUNCTION
+            | (params == null ? 4 : 0)
+            | (optParams == null ? 8 : 0)
+            | (rest ? 16 : 0)
+            | (l1 << 5);
+        return new TypeKey(form, components);
+    }
+
+    static public TypeKey tuple(Vector<Symbol> elements)
+    {
+        return new TypeKey(TUPLE, elements.toArray(new Symbol[elements.size()]));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return _hash;
+    }
+
+    @Override
+    public boolean equals(Object object)
+    {
+        if (!(object instanceof TypeKey))
+        {
+            return false;
+        }
+        var key = (TypeKey) object;
+        if (key._hash != _hash || key._form != _form || key._components.length != _components.length)
+        {
+            return false;
+        }
+        for (int i = 0; i != _components.length; ++i)
+        {
+            if (key._components[i] != _components[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
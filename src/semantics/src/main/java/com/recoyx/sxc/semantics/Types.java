@@ -1,6 +1,7 @@
 package com.recoyx.sxc.semantics;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Vector;
 import com.google.common.primitives.*;
@@ -49,11 +50,17 @@ public final class Types
             return false;
         }
 
+        private HashSet<Symbol> _supertypes;
+        private long _supertypesVersion;
+
         @Override
         public boolean isSubtypeOf(Symbol type)
         {
             if (this == type)
                 return true;
+            var pool = pool();
+            if (pool != null && pool.isTypeHierarchyFinished())
+                return supertypes(pool.typeHierarchyVersion()).contains(type);
             var superClass = this.superClass();
             if (superClass != null && (superClass == type || superClass.isSubtypeOf(type)))
                 return true;
@@ -74,6 +81,49 @@ public final class Types
             return false;
         }
 
+        /*
+         * Types the type is a subtype of, as found by the walk in
+         * isSubtypeOf(): classes reached through base classes and super
+         * interfaces, and interfaces reached through implemented interfaces
+         * as well. The set is built on the first query once the pool's
+         * hierarchy is finished, and again after it changes.
+         */
+        private HashSet<Symbol> supertypes(long version)
+        {
+            if (_supertypes != null && _supertypesVersion == version)
+                return _supertypes;
+            var supertypes = new HashSet<Symbol>();
+            _supertypes = supertypes;
+            _supertypesVersion = version;
+            addSupertype(supertypes, this.superClass(), version, false);
+            var superItrfcs = this.superInterfaces();
+            if (superItrfcs != null)
+            {
+                for (var itrfc : superItrfcs)
+                    addSupertype(supertypes, itrfc, version, false);
+            }
+            var itrfcs = this.implementedInterfaces();
+            if (itrfcs != null)
+            {
+                for (var itrfc : itrfcs)
+                    addSupertype(supertypes, itrfc, version, true);
+            }
+            return supertypes;
+        }
+
+        static private void addSupertype(HashSet<Symbol> supertypes, Symbol type, long version, boolean interfacesOnly)
+        {
+            if (type == null)
+                return;
+            if (!interfacesOnly || type.isInterfaceType())
+                supertypes.add(type);
+            if (!(type instanceof Type))
+                return;
+            for (var supertype : ((Type) type).supertypes(version))
+                if (!interfacesOnly || supertype.isInterfaceType())
+                    supertypes.add(supertype);
+        }
+
         @Override
         public Symbol lookupName(Symbol name)
             throws AmbiguousReferenceError
@@ -635,6 +685,10 @@ public final class Types
             if (!this._interfaces.contains(type))
             {
                 this._interfaces.add(type);
+                if (pool() != null)
+                {
+                    pool().typeHierarchyChanged();
+                }
             }
         }
 
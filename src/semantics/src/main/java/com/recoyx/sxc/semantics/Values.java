@@ -913,7 +913,7 @@ public final class Values
                 if (toType2 == pool.uintType
                 ||  toType2 == pool.charType)
                 {
-                    return pool.createUnsignedIntConstantValue(UnsignedInteger.fromIntBits((int) this.numberValue()), toType);
+                    return pool.createUnsignedIntConstantValue(UnsignedInteger.fromIntBits(toInt32(this.numberValue())), toType);
                 }
 
                 if (toType2 == pool.bigIntType)
@@ -923,7 +923,7 @@ public final class Values
 
                 if (toType2 == pool.intType)
                 {
-                    return pool.createIntConstantValue((int) this.numberValue(), toType);
+                    return pool.createIntConstantValue(toInt32(this.numberValue()), toType);
                 }
             }
             else if (this.isStringConstantValue())
@@ -966,6 +966,20 @@ public final class Values
             }
             return null;
         }
+
+        /*
+         * ToInt32: the value truncated toward zero and reduced modulo 2^32,
+         * with NaN and infinities giving 0. The remainder is exact, so large
+         * values keep their low bits. ToUint32 gives the same bits.
+         */
+        static private int toInt32(double value)
+        {
+            if (!Double.isFinite(value))
+            {
+                return 0;
+            }
+            return (int) (long) (value % 4294967296.0);
+        }
     }
 
     /**